@@ -0,0 +1,185 @@
+package bryankier.testframework;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * A copy of a prepared browser state for one site (cookies and local storage,
+ * which hold things like dismissed popups and layout preferences), captured once
+ * and restored into later sessions so they can skip the steps that prepared it.
+ * <p>
+ * HttpOnly cookies are left out by default, because those typically identify
+ * the server-side session (and with it things like the cart), which shouldn't
+ * be shared between tests. To keep only the state the preparation steps
+ * actually set, capture a baseline before them and save
+ * {@link #changedSince(BrowserSessionSnapshot)} afterwards.
+ */
+public class BrowserSessionSnapshot {
+
+	private final List<Cookie> cookies;
+	private final Map<String, String> localStorage;
+
+	private BrowserSessionSnapshot(List<Cookie> cookies, Map<String, String> localStorage) {
+		this.cookies = cookies;
+		this.localStorage = localStorage;
+	}
+
+	/**
+	 * Captures the state of the site the driver is currently on, leaving out
+	 * HttpOnly (session) cookies.
+	 *
+	 * @param driver the automation web driver, on a page of the prepared site
+	 * @return the snapshot
+	 */
+	public static BrowserSessionSnapshot capture(WebDriver driver) {
+		return capture(driver, false);
+	}
+
+	/**
+	 * Captures the state of the site the driver is currently on.
+	 *
+	 * @param driver                 the automation web driver, on a page of the
+	 *                               prepared site
+	 * @param includeHttpOnlyCookies if true, also capture HttpOnly cookies, which
+	 *                               will share the server-side session with every
+	 *                               restored browser
+	 * @return the snapshot
+	 */
+	@SuppressWarnings("unchecked")
+	public static BrowserSessionSnapshot capture(WebDriver driver, boolean includeHttpOnlyCookies) {
+		List<Cookie> cookies = new ArrayList<Cookie>();
+		for (Cookie cookie : driver.manage().getCookies()) {
+			if (includeHttpOnlyCookies || !cookie.isHttpOnly()) {
+				cookies.add(cookie);
+			}
+		}
+
+		Map<String, String> storage = new HashMap<String, String>();
+		if (driver instanceof JavascriptExecutor) {
+			Object result = ((JavascriptExecutor) driver).executeScript("var out = {};"
+					+ "for (var i = 0; i < window.localStorage.length; i++) {"
+					+ "  var key = window.localStorage.key(i); out[key] = window.localStorage.getItem(key); }"
+					+ "return out;");
+			if (result instanceof Map) {
+				storage.putAll((Map<String, String>) result);
+			}
+		}
+
+		return new BrowserSessionSnapshot(cookies, storage);
+	}
+
+	/**
+	 * Gets the part of this snapshot that differs from an earlier one: cookies
+	 * and local storage entries that were added or changed since it was captured.
+	 *
+	 * @param earlier a snapshot of the same session captured earlier, before the
+	 *                preparation steps
+	 * @return the snapshot of the changes
+	 */
+	public BrowserSessionSnapshot changedSince(BrowserSessionSnapshot earlier) {
+		Map<String, String> earlierCookies = new HashMap<String, String>();
+		for (Cookie cookie : earlier.cookies) {
+			earlierCookies.put(cookie.getName(), cookie.getValue());
+		}
+
+		List<Cookie> changedCookies = new ArrayList<Cookie>();
+		for (Cookie cookie : cookies) {
+			if (!cookie.getValue().equals(earlierCookies.get(cookie.getName()))) {
+				changedCookies.add(cookie);
+			}
+		}
+
+		Map<String, String> changedStorage = new HashMap<String, String>();
+		for (Map.Entry<String, String> entry : localStorage.entrySet()) {
+			if (!entry.getValue().equals(earlier.localStorage.get(entry.getKey()))) {
+				changedStorage.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		return new BrowserSessionSnapshot(changedCookies, changedStorage);
+	}
+
+	/**
+	 * @return true if the snapshot has no cookies or local storage entries, for
+	 *         example when nothing changed since an earlier snapshot
+	 */
+	public boolean isEmpty() {
+		return cookies.isEmpty() && localStorage.isEmpty();
+	}
+
+	/**
+	 * Goes to the target URL and restores this snapshot into the browser session
+	 * there, in one navigation. The restored state applies from the next page
+	 * load on, so use this when the state is needed by the pages after the target
+	 * (a layout preference for search results, for example), and
+	 * {@link #restore(WebDriver, String, String)} when the target page itself
+	 * needs it.
+	 *
+	 * @param driver    the automation web driver to restore into
+	 * @param targetUrl the page to go to, on the snapshot's site
+	 * @return true if the state was restored without errors
+	 */
+	public boolean restore(WebDriver driver, String targetUrl) {
+		WebDriverHelper.navigate(driver, targetUrl);
+
+		return applyTo(driver);
+	}
+
+	/**
+	 * Restores this snapshot into a browser session, then goes to the target URL.
+	 * <p>
+	 * Cookies and storage can only be set for the site the browser is on, so the
+	 * lightweight URL is loaded first. It should be a small page on the same site
+	 * (robots.txt, for example), so the full page isn't loaded twice.
+	 *
+	 * @param driver         the automation web driver to restore into
+	 * @param lightweightUrl a small page on the same site to load first
+	 * @param targetUrl      the page to go to once the state is restored
+	 * @return true if the state was restored without errors
+	 */
+	public boolean restore(WebDriver driver, String lightweightUrl, String targetUrl) {
+		WebDriverHelper.navigate(driver, lightweightUrl);
+		boolean success = applyTo(driver);
+		WebDriverHelper.navigate(driver, targetUrl);
+
+		return success;
+	}
+
+	/**
+	 * Sets this snapshot's cookies and local storage on the site the driver is on.
+	 *
+	 * @return true if they were all set without errors
+	 */
+	private boolean applyTo(WebDriver driver) {
+		boolean success = true;
+
+		for (Cookie cookie : cookies) {
+			try {
+				driver.manage().addCookie(cookie);
+			} catch (WebDriverException e) {
+				// keep going, a cookie for another subdomain shouldn't stop the rest
+				success = false;
+			}
+		}
+
+		if (!localStorage.isEmpty() && driver instanceof JavascriptExecutor) {
+			try {
+				((JavascriptExecutor) driver).executeScript(
+						"var items = arguments[0];"
+								+ "for (var key in items) { window.localStorage.setItem(key, items[key]); }",
+						localStorage);
+			} catch (WebDriverException e) {
+				success = false;
+			}
+		}
+
+		return success;
+	}
+}
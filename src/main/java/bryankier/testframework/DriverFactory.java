@@ -1,9 +1,28 @@
 package bryankier.testframework;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
 import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
 
+import bryankier.testframework.events.DriverCreationEvent;
 import io.github.bonigarcia.wdm.WebDriverManager;
 
 /**
@@ -14,9 +33,60 @@ import io.github.bonigarcia.wdm.WebDriverManager;
  * supports Chrome. Other browsers should be easily added in this method and
  * anywhere browser-specific logic needs to be implemented (which should be
  * isolated as much as possible.").
+ * <p>
+ * For quick smoke runs, "htmlunit" creates a lightweight headless browser that
+ * runs inside the JVM, with no browser process to start. It only supports part
+ * of what the page objects do; check {@link #supports(String, DriverFeature)}
+ * before using the other features.
+ * <p>
+ * "remote-chrome" creates a Chrome session on a Selenium grid instead of
+ * locally, spread across the configured grid endpoints by
+ * {@link GridSessionDistributor}. Other "remote-" names are rejected rather
+ * than run as Chrome.
+ * <p>
+ * Driver binaries are resolved once per JVM, and the last resolved path is kept
+ * in a local cache file for offline runs. These system properties change how
+ * drivers are started:
+ * <ul>
+ * <li>driver.offline - if true, never look up or download driver binaries; use
+ * the webdriver.chrome.driver property or the cached path only. The cached
+ * driver must still match the installed browser, so refresh the cache with an
+ * online run after the browser updates.</li>
+ * <li>driver.cacheFile - path of the driver binary cache file</li>
+ * <li>driver.sharedService - if true, start one chromedriver service and create
+ * every Chrome session against it, instead of a new service per driver</li>
+ * </ul>
  */
 public class DriverFactory {
 
+	static final boolean OFFLINE = Boolean.parseBoolean(System.getProperty("driver.offline", "false"));
+	static final boolean SHARED_SERVICE = Boolean.parseBoolean(System.getProperty("driver.sharedService", "false"));
+	static final String CACHE_FILE = System.getProperty("driver.cacheFile",
+			System.getProperty("user.home") + "/.webstaurant-tests/driver-cache.properties");
+	static final String CHROME_DRIVER_CACHE_KEY = "chromedriver.path";
+
+	/**
+	 * The features each browser engine supports, keyed by engine (see
+	 * {@link #getEngine(String)}):
+	 * <ul>
+	 * <li>chrome, local or on a grid - everything</li>
+	 * <li>htmlunit (2.21, as bundled with Selenium 2.53.1) - none of them. Its
+	 * driver can't take screenshots or read the console log, and its Performance
+	 * object has no getEntriesByType, which the page timing script needs. Adding
+	 * to the cart is untested against the store's dialogs, so it isn't
+	 * claimed.</li>
+	 * </ul>
+	 */
+	private static final Map<String, Set<DriverFeature>> ENGINE_FEATURES = new HashMap<String, Set<DriverFeature>>();
+	static {
+		ENGINE_FEATURES.put("chrome", EnumSet.allOf(DriverFeature.class));
+		ENGINE_FEATURES.put("remote-chrome", EnumSet.allOf(DriverFeature.class));
+		ENGINE_FEATURES.put("htmlunit", EnumSet.noneOf(DriverFeature.class));
+	}
+
+	private static boolean chromeDriverResolved = false;
+	private static ChromeDriverService sharedChromeService;
+
 	/**
 	 * Creates a test driver for the desired browser. This can be called on-demand
 	 * if needed, and then pass the driver between tests and page objects, or it can
@@ -29,16 +99,61 @@ public class DriverFactory {
 	 * @return a web driver for the browser with specified options
 	 */
 	public static WebDriver createDriver(String browserName, boolean maximize, boolean headless) {
+		DriverCreationEvent event = new DriverCreationEvent();
+		event.browser = browserName;
+		event.headless = headless;
+		event.begin();
+
+		try {
+			WebDriver returnDriver = createDriverForBrowser(browserName, maximize, headless);
+			event.succeeded = true;
+			return returnDriver;
+		} finally {
+			event.commit();
+		}
+	}
+
+	/**
+	 * Creates the driver for {@link #createDriver(String, boolean, boolean)},
+	 * which times it as a Java Flight Recorder {@link DriverCreationEvent}.
+	 */
+	private static WebDriver createDriverForBrowser(String browserName, boolean maximize, boolean headless) {
 
 		WebDriver returnDriver = null;
 
-		if (browserName != null && browserName.toLowerCase().contains("chrome")) {
-			WebDriverManager.chromedriver().setup();
+		if (isRemote(browserName)) {
+			if (!browserName.toLowerCase().equals("remote-chrome")) {
+				throw new IllegalArgumentException("Remote browser name '" + browserName
+						+ "' is not supported; only remote-chrome is handled by this method");
+			}
+
+			// the driver binaries are on the grid nodes, nothing to resolve here
+			ChromeOptions options = new ChromeOptions();
+			if (headless) {
+				options.addArguments("--headless");
+			}
+			DesiredCapabilities capabilities = DesiredCapabilities.chrome();
+			capabilities.setCapability(ChromeOptions.CAPABILITY, options);
+			returnDriver = GridSessionDistributor.createSession(capabilities);
+		} else if (browserName != null && browserName.toLowerCase().contains("chrome")) {
+			resolveChromeDriver();
 			ChromeOptions options = new ChromeOptions();
 			if (headless) {
 				options.addArguments("--headless");
 			}
-			returnDriver = new ChromeDriver(options);
+
+			if (SHARED_SERVICE) {
+				DesiredCapabilities capabilities = DesiredCapabilities.chrome();
+				capabilities.setCapability(ChromeOptions.CAPABILITY, options);
+				// a RemoteWebDriver, unlike ChromeDriver, doesn't stop the service on quit
+				returnDriver = new RemoteWebDriver(getSharedChromeService().getUrl(), capabilities);
+			} else {
+				returnDriver = new ChromeDriver(options);
+			}
+		} else if (isHtmlUnit(browserName)) {
+			// always headless; JavaScript is needed for the store's pages
+			returnDriver = new HtmlUnitDriver(BrowserVersion.CHROME, true);
+			maximize = false;
 		} else {
 			throw new IllegalArgumentException(
 					"Browser name '" + "' is not a valid browser name, or is not handled by this method");
@@ -50,4 +165,157 @@ public class DriverFactory {
 
 		return returnDriver;
 	}
+
+	/**
+	 * Makes sure the chromedriver binary is known, only the first time it is
+	 * called in the JVM. Uses the webdriver.chrome.driver system property if it is
+	 * set. Otherwise, when online, resolves it with WebDriverManager, which
+	 * matches it to the installed browser's version (downloading it if needed),
+	 * and caches the path; when offline, uses the cached path.
+	 * 
+	 * @throws IllegalStateException if offline and no driver binary is known
+	 */
+	static synchronized void resolveChromeDriver() {
+		if (chromeDriverResolved) {
+			return;
+		}
+
+		String driverPath = System.getProperty(ChromeDriverService.CHROME_DRIVER_EXE_PROPERTY);
+		Properties cache = loadDriverCache();
+
+		// only trusted offline: the browser may have updated since it was cached
+		if (!isExistingFile(driverPath) && OFFLINE) {
+			driverPath = cache.getProperty(CHROME_DRIVER_CACHE_KEY);
+		}
+
+		if (!isExistingFile(driverPath)) {
+			if (OFFLINE) {
+				throw new IllegalStateException("Offline mode is on, but no chromedriver binary is cached in '"
+						+ CACHE_FILE + "' or set with the " + ChromeDriverService.CHROME_DRIVER_EXE_PROPERTY
+						+ " property.");
+			}
+
+			WebDriverManager manager = WebDriverManager.chromedriver();
+			manager.setup();
+			driverPath = manager.getDownloadedDriverPath();
+
+			cache.setProperty(CHROME_DRIVER_CACHE_KEY, driverPath);
+			saveDriverCache(cache);
+		}
+
+		System.setProperty(ChromeDriverService.CHROME_DRIVER_EXE_PROPERTY, driverPath);
+		chromeDriverResolved = true;
+	}
+
+	/**
+	 * Gets the chromedriver service shared by all Chrome sessions, starting it the
+	 * first time. It is stopped when the JVM shuts down.
+	 * 
+	 * @return the running service
+	 */
+	static synchronized ChromeDriverService getSharedChromeService() {
+		if (sharedChromeService == null || !sharedChromeService.isRunning()) {
+			sharedChromeService = ChromeDriverService.createDefaultService();
+			try {
+				sharedChromeService.start();
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to start the shared chromedriver service", e);
+			}
+
+			final ChromeDriverService service = sharedChromeService;
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				public void run() {
+					service.stop();
+				}
+			}));
+		}
+
+		return sharedChromeService;
+	}
+
+	/**
+	 * Compatibility profile of the supported browser engines: whether the engine
+	 * for the browser name supports a page-object operation or framework feature.
+	 * Chrome supports everything and HtmlUnit none of the features (see
+	 * {@link #ENGINE_FEATURES} for why). Searching and checking results aren't
+	 * features, as every engine is expected to do them, but whether HtmlUnit's
+	 * older script engine runs the store's current pages well enough for that is
+	 * unverified; treat an htmlunit run as a smoke check, not a substitute for
+	 * Chrome.
+	 * 
+	 * @param browserName the name of the browser, as passed to
+	 *                    {@link #createDriver(String, boolean, boolean)}
+	 * @param feature     the feature to check
+	 * @return true if the feature is supported, false if it isn't or the browser
+	 *         name isn't one {@link #createDriver(String, boolean, boolean)}
+	 *         handles
+	 */
+	public static boolean supports(String browserName, DriverFeature feature) {
+		Set<DriverFeature> features = ENGINE_FEATURES.get(getEngine(browserName));
+		return features != null && features.contains(feature);
+	}
+
+	/**
+	 * Gets the engine a browser name creates a driver for, matching names the way
+	 * {@link #createDriver(String, boolean, boolean)} does.
+	 * 
+	 * @param browserName the name of the browser
+	 * @return the engine, or null if the name isn't handled
+	 */
+	static String getEngine(String browserName) {
+		if (browserName == null) {
+			return null;
+		}
+
+		String name = browserName.toLowerCase();
+		if (isRemote(browserName)) {
+			return name.equals("remote-chrome") ? "remote-chrome" : null;
+		} else if (name.contains("chrome")) {
+			return "chrome";
+		} else if (isHtmlUnit(browserName)) {
+			return "htmlunit";
+		}
+
+		return null;
+	}
+
+	private static boolean isRemote(String browserName) {
+		return browserName != null && browserName.toLowerCase().startsWith("remote");
+	}
+
+	private static boolean isHtmlUnit(String browserName) {
+		return browserName != null && browserName.toLowerCase().contains("htmlunit");
+	}
+
+	private static boolean isExistingFile(String path) {
+		return path != null && new File(path).isFile();
+	}
+
+	private static Properties loadDriverCache() {
+		Properties cache = new Properties();
+		File file = new File(CACHE_FILE);
+
+		if (file.isFile()) {
+			try (InputStream in = new FileInputStream(file)) {
+				cache.load(in);
+			} catch (IOException e) {
+				// an unreadable cache just means resolving the driver again
+			}
+		}
+
+		return cache;
+	}
+
+	private static void saveDriverCache(Properties cache) {
+		File file = new File(CACHE_FILE);
+		if (file.getAbsoluteFile().getParentFile() != null) {
+			file.getAbsoluteFile().getParentFile().mkdirs();
+		}
+
+		try (OutputStream out = new FileOutputStream(file)) {
+			cache.store(out, "Resolved web driver binaries");
+		} catch (IOException e) {
+			// not fatal, the driver will be resolved again next run
+		}
+	}
 }
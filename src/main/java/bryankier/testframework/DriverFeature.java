@@ -0,0 +1,20 @@
+package bryankier.testframework;
+
+/**
+ * Page-object operations and framework features that not every browser engine
+ * supports. See {@link DriverFactory#supports(String, DriverFeature)} for which
+ * engines support which features.
+ */
+public enum DriverFeature {
+	/**
+	 * Adding items to the cart (including the accessories dialog), and reading
+	 * and emptying the cart page
+	 */
+	ADD_TO_CART,
+	/** Taking screenshots for failure artifacts */
+	SCREENSHOTS,
+	/** Reading the browser console log for failure artifacts */
+	CONSOLE_LOGS,
+	/** Navigation and Paint Timing for page performance budgets */
+	PAGE_TIMING
+}
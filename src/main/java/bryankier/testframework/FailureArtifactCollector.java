@@ -0,0 +1,226 @@
+package bryankier.testframework;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.logging.LogEntry;
+import org.openqa.selenium.logging.LogType;
+
+/**
+ * Captures a screenshot, the page source (DOM) and the browser console log when
+ * a test step fails, and saves them in a folder named for the test and step.
+ * <p>
+ * Only grabbing the artifacts from the browser happens on the test thread.
+ * Compressing and writing them is done by a background thread with a bounded
+ * queue; if the queue is full, the artifacts for that failure are dropped (and
+ * counted) before anything is grabbed, rather than slowing the test down.
+ */
+public class FailureArtifactCollector {
+
+	private final File outputFolder;
+	private final AtomicInteger failureNumber = new AtomicInteger();
+	private final AtomicInteger droppedCount = new AtomicInteger();
+	private final ThreadPoolExecutor writer;
+
+	/** Number of failures queued or being written, guarded by itself */
+	private final int[] pending = new int[1];
+
+	/**
+	 * @param outputFolder  the folder to save artifacts in, one sub-folder per
+	 *                      failure
+	 * @param queueCapacity the maximum number of failures waiting to be written
+	 */
+	public FailureArtifactCollector(String outputFolder, int queueCapacity) {
+		this.outputFolder = new File(outputFolder);
+
+		writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "failure-artifact-writer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new RejectedExecutionHandler() {
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+						droppedCount.incrementAndGet();
+						finishedOne();
+					}
+				});
+	}
+
+	/**
+	 * Grabs the failure artifacts from the browser and queues them to be saved.
+	 * Any artifact that can't be grabbed (no browser yet, logs not supported,
+	 * etc.) is skipped; this never throws, so it can be called from failure
+	 * handling.
+	 *
+	 * @param driver   the automation web driver, or null if there isn't one yet
+	 * @param testName the name of the test, used in the folder name
+	 * @param step     the description of the step that failed
+	 * @param reason   the failure message
+	 */
+	public void capture(WebDriver driver, String testName, String step, String reason) {
+		capture(driver, null, testName, step, reason);
+	}
+
+	/**
+	 * Like {@link #capture(WebDriver, String, String, String)}, but only grabs the
+	 * screenshot and console log if the browser supports them (see
+	 * {@link DriverFactory#supports(String, DriverFeature)}).
+	 *
+	 * @param driver      the automation web driver, or null if there isn't one yet
+	 * @param browserName the name the driver was created with
+	 * @param testName    the name of the test, used in the folder name
+	 * @param step        the description of the step that failed
+	 * @param reason      the failure message
+	 */
+	public void capture(WebDriver driver, String browserName, String testName, String step, String reason) {
+		// don't spend time grabbing artifacts that would be dropped anyway
+		if (writer.getQueue().remainingCapacity() == 0) {
+			droppedCount.incrementAndGet();
+			return;
+		}
+
+		byte[] screenshot = null;
+		String pageSource = null;
+		StringBuilder consoleLog = null;
+
+		if (driver != null) {
+			try {
+				if (driver instanceof TakesScreenshot
+						&& DriverFactory.supports(browserName, DriverFeature.SCREENSHOTS)) {
+					screenshot = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+				}
+			} catch (Exception e) {
+				// keep going with whatever else can be grabbed
+			}
+
+			try {
+				pageSource = driver.getPageSource();
+			} catch (Exception e) {
+			}
+
+			if (DriverFactory.supports(browserName, DriverFeature.CONSOLE_LOGS)) {
+				try {
+					consoleLog = new StringBuilder();
+					for (LogEntry entry : driver.manage().logs().get(LogType.BROWSER)) {
+						consoleLog.append(entry.toString()).append('\n');
+					}
+				} catch (Exception e) {
+					consoleLog = null;
+				}
+			}
+		}
+
+		final File folder = new File(outputFolder,
+				String.format("%04d-%s", failureNumber.incrementAndGet(), toFileName(testName)));
+		final byte[] screenshotBytes = screenshot;
+		final String source = pageSource;
+		final String log = consoleLog == null ? null : consoleLog.toString();
+		final String summary = "Test: " + testName + "\nStep: " + step + "\nReason: " + reason + "\n";
+
+		synchronized (pending) {
+			pending[0]++;
+		}
+		writer.execute(new Runnable() {
+			public void run() {
+				try {
+					write(folder, summary, screenshotBytes, source, log);
+				} finally {
+					finishedOne();
+				}
+			}
+		});
+	}
+
+	private void finishedOne() {
+		synchronized (pending) {
+			pending[0]--;
+			pending.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits for the failures queued so far to be written.
+	 *
+	 * @param timeoutMilliseconds the maximum time to wait
+	 * @return true if everything queued was written in time
+	 */
+	public boolean flush(int timeoutMilliseconds) {
+		long giveUpTime = System.currentTimeMillis() + timeoutMilliseconds;
+
+		synchronized (pending) {
+			while (pending[0] > 0) {
+				long remaining = giveUpTime - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				try {
+					pending.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the number of failures whose artifacts were dropped because the
+	 *         queue was full
+	 */
+	public int getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Runs on the writer thread to compress and save one failure's artifacts.
+	 */
+	private static void write(File folder, String summary, byte[] screenshot, String pageSource,
+			String consoleLog) {
+		folder.mkdirs();
+
+		try {
+			writeFile(new File(folder, "failure.txt"), summary.getBytes(StandardCharsets.UTF_8), false);
+			if (screenshot != null) {
+				// already compressed
+				writeFile(new File(folder, "screenshot.png"), screenshot, false);
+			}
+			if (pageSource != null) {
+				writeFile(new File(folder, "page-source.html.gz"), pageSource.getBytes(StandardCharsets.UTF_8), true);
+			}
+			if (consoleLog != null) {
+				writeFile(new File(folder, "console.log.gz"), consoleLog.getBytes(StandardCharsets.UTF_8), true);
+			}
+		} catch (IOException e) {
+			System.err.println("Unable to save failure artifacts in '" + folder + "': " + e.getMessage());
+		}
+	}
+
+	private static void writeFile(File file, byte[] content, boolean gzip) throws IOException {
+		try (OutputStream out = gzip ? new GZIPOutputStream(new FileOutputStream(file))
+				: new FileOutputStream(file)) {
+			out.write(content);
+		}
+	}
+
+	private static String toFileName(String text) {
+		String name = String.valueOf(text).replaceAll("[^A-Za-z0-9._-]+", "_");
+		return name.length() > 80 ? name.substring(0, 80) : name;
+	}
+}
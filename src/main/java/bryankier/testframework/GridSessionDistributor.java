@@ -0,0 +1,265 @@
+package bryankier.testframework;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.CommandInfo;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.openqa.selenium.remote.internal.ApacheHttpClient;
+import org.openqa.selenium.remote.internal.HttpClientFactory;
+
+/**
+ * Creates remote browser sessions on one or more Selenium grid endpoints (hubs
+ * or standalone servers), sending each new session to the endpoint with the
+ * most free capacity.
+ * <p>
+ * Endpoints are read from the grid.urls system property, as a comma separated
+ * list of URLs each optionally followed by |[max sessions], for example
+ * "http://node1:4444/wd/hub|10,http://node2:4444/wd/hub|5". The default is a
+ * standalone server started locally (java -jar selenium-server-standalone.jar)
+ * at http://localhost:4444/wd/hub, with 5 sessions.
+ * <p>
+ * Free capacity comes from the hub's slot counts (/grid/api/hub) when the
+ * endpoint is a grid hub, and otherwise from the sessions this JVM has open on
+ * it. No endpoint is given more sessions from this JVM than its maximum, and
+ * no session is started on an endpoint with no free slots. All sessions share
+ * one pooled HTTP client, so connections to each endpoint are kept alive and
+ * reused between commands and sessions.
+ */
+public class GridSessionDistributor {
+
+	static final int DEFAULT_MAX_SESSIONS = 5;
+	static final String DEFAULT_GRID_URLS = "http://localhost:4444/wd/hub";
+
+	private static final Pattern FREE_SLOTS = Pattern.compile("\"free\"\\s*:\\s*(\\d+)");
+
+	/** Shared by all remote sessions, so connections are pooled and kept alive */
+	private static final HttpClient.Factory HTTP_CLIENT_FACTORY = new ApacheHttpClient.Factory(
+			new HttpClientFactory());
+
+	private static List<Endpoint> endpoints;
+
+	/**
+	 * A grid endpoint and the sessions this JVM has open on it
+	 */
+	static class Endpoint {
+		final URL url;
+		final int maxSessions;
+		final AtomicInteger activeSessions = new AtomicInteger();
+
+		Endpoint(URL url, int maxSessions) {
+			this.url = url;
+			this.maxSessions = maxSessions;
+		}
+
+		/**
+		 * @return the free session slots: the hub's count if it reports one, capped by
+		 *         the slots left of this JVM's maximum for the endpoint
+		 */
+		int findFreeSlots() {
+			int localFreeSlots = maxSessions - activeSessions.get();
+			Integer hubFreeSlots = findHubFreeSlots();
+			return hubFreeSlots != null ? Math.min(hubFreeSlots, localFreeSlots) : localFreeSlots;
+		}
+
+		/**
+		 * Takes one of this JVM's slots on the endpoint, if it has any left.
+		 *
+		 * @return true if a slot was taken
+		 */
+		boolean tryReserveSlot() {
+			if (activeSessions.incrementAndGet() > maxSessions) {
+				activeSessions.decrementAndGet();
+				return false;
+			}
+			return true;
+		}
+
+		private Integer findHubFreeSlots() {
+			HttpURLConnection connection = null;
+			try {
+				connection = (HttpURLConnection) new URL(url, "/grid/api/hub").openConnection();
+				connection.setConnectTimeout(2000);
+				connection.setReadTimeout(2000);
+				if (connection.getResponseCode() != 200) {
+					return null;
+				}
+
+				try (InputStream in = connection.getInputStream();
+						Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+					return parseFreeSlots(scanner.useDelimiter("\\A").next());
+				}
+			} catch (IOException | RuntimeException e) {
+				// not a hub (a standalone server, for example), or not reachable
+				return null;
+			} finally {
+				if (connection != null) {
+					connection.disconnect();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A remote session that gives its slot back to its endpoint when it quits
+	 */
+	static class GridWebDriver extends RemoteWebDriver {
+		private final Endpoint endpoint;
+		private boolean quit = false;
+
+		GridWebDriver(Endpoint endpoint, Capabilities capabilities) {
+			super(new HttpCommandExecutor(Collections.<String, CommandInfo>emptyMap(), endpoint.url,
+					HTTP_CLIENT_FACTORY), capabilities);
+			this.endpoint = endpoint;
+		}
+
+		@Override
+		public void quit() {
+			try {
+				super.quit();
+			} finally {
+				synchronized (this) {
+					if (!quit) {
+						quit = true;
+						endpoint.activeSessions.decrementAndGet();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the free slot count from a hub's /grid/api/hub response.
+	 *
+	 * @param hubStatus the response body
+	 * @return the free slots, or null if the response doesn't include them
+	 */
+	static Integer parseFreeSlots(String hubStatus) {
+		Matcher matcher = FREE_SLOTS.matcher(hubStatus);
+		return matcher.find() ? Integer.parseInt(matcher.group(1)) : null;
+	}
+
+	/**
+	 * Creates a remote session on the endpoint with the most free capacity,
+	 * trying the others in turn if it can't be created there. Endpoints with no
+	 * free slots are skipped.
+	 *
+	 * @param capabilities the desired capabilities for the session
+	 * @return the remote driver
+	 * @throws WebDriverException if every endpoint is full, or no endpoint could
+	 *                            create the session
+	 */
+	public static RemoteWebDriver createSession(Capabilities capabilities) {
+		WebDriverException lastError = null;
+
+		for (Endpoint endpoint : findEndpointsByFreeSlots()) {
+			if (!endpoint.tryReserveSlot()) {
+				continue;
+			}
+			try {
+				return new GridWebDriver(endpoint, capabilities);
+			} catch (WebDriverException e) {
+				endpoint.activeSessions.decrementAndGet();
+				lastError = e;
+			}
+		}
+
+		if (lastError == null) {
+			throw new WebDriverException("Unable to create a remote session: every grid endpoint is full");
+		}
+		throw new WebDriverException("Unable to create a remote session on any grid endpoint", lastError);
+	}
+
+	/**
+	 * @return the endpoints with free slots, most free slots first
+	 */
+	private static List<Endpoint> findEndpointsByFreeSlots() {
+		List<Endpoint> all = getEndpoints();
+		final List<Integer> freeSlots = new ArrayList<Integer>();
+		for (Endpoint endpoint : all) {
+			freeSlots.add(endpoint.findFreeSlots());
+		}
+
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < all.size(); i++) {
+			if (freeSlots.get(i) > 0) {
+				order.add(i);
+			}
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(freeSlots.get(b), freeSlots.get(a));
+			}
+		});
+
+		List<Endpoint> sorted = new ArrayList<Endpoint>();
+		for (int i : order) {
+			sorted.add(all.get(i));
+		}
+		return sorted;
+	}
+
+	/**
+	 * Reads the endpoints from the grid.urls system property the first time it
+	 * is called.
+	 */
+	static synchronized List<Endpoint> getEndpoints() {
+		if (endpoints == null) {
+			endpoints = parseEndpoints(System.getProperty("grid.urls", DEFAULT_GRID_URLS));
+		}
+
+		return endpoints;
+	}
+
+	/**
+	 * Parses a grid.urls value.
+	 *
+	 * @param gridUrls comma separated URLs, each optionally followed by |[max
+	 *                 sessions]
+	 * @return the endpoints, in the order given
+	 * @throws IllegalArgumentException if a URL or maximum isn't valid
+	 */
+	static List<Endpoint> parseEndpoints(String gridUrls) {
+		List<Endpoint> parsed = new ArrayList<Endpoint>();
+		for (String entry : gridUrls.split(",")) {
+			if (entry.trim().isEmpty()) {
+				continue;
+			}
+
+			// '|' can't appear unencoded in a URL, so it can't be part of the URL's query
+			String url = entry.trim();
+			int maxSessions = DEFAULT_MAX_SESSIONS;
+			int separator = url.indexOf('|');
+			try {
+				if (separator >= 0) {
+					maxSessions = Integer.parseInt(url.substring(separator + 1).trim());
+					url = url.substring(0, separator).trim();
+				}
+				if (maxSessions < 1) {
+					throw new IllegalArgumentException("Grid endpoint '" + entry + "' has no sessions.");
+				}
+				parsed.add(new Endpoint(new URL(url), maxSessions));
+			} catch (MalformedURLException | NumberFormatException e) {
+				throw new IllegalArgumentException("Grid endpoint '" + entry + "' is not valid.", e);
+			}
+		}
+
+		return parsed;
+	}
+}
@@ -0,0 +1,233 @@
+package bryankier.testframework;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams one JSON line per validated item to a file while a test runs, so
+ * per-item outcomes don't have to be held in memory until the end of the test,
+ * survive a crash up to the last flush, and can be tailed by other tools.
+ * <p>
+ * Records are queued by the test thread and written by a background thread,
+ * which collects them into batches and flushes each batch once it is full, or
+ * sooner if no more records arrive for a short time. The queue is bounded so a slow disk applies back pressure
+ * instead of growing memory.
+ */
+public class ItemResultWriter implements AutoCloseable {
+
+	private static final int QUEUE_CAPACITY = 10000;
+	private static final int IDLE_FLUSH_MILLISECONDS = 500;
+
+	/** Queued in place of a record to tell the writer thread to finish */
+	private static final String END_OF_RECORDS = "{END_OF_RECORDS}";
+
+	private final BlockingQueue<String> queue = new LinkedBlockingQueue<String>(QUEUE_CAPACITY);
+	private final Writer writer;
+	private final Thread writerThread;
+	private final String runLabel;
+	private final int batchSize;
+	private volatile IOException writeError;
+
+	/**
+	 * Opens (appending to) the results file and starts the background writer.
+	 *
+	 * @param filePath  path of the JSONL file to write, created along with its
+	 *                  parent folders if needed
+	 * @param runLabel  label written with each record to tell runs apart, such as
+	 *                  the search text
+	 * @param batchSize the number of records to write between flushes
+	 * @throws IOException if the file can't be opened
+	 */
+	public ItemResultWriter(String filePath, String runLabel, int batchSize) throws IOException {
+		File file = new File(filePath);
+		if (file.getAbsoluteFile().getParentFile() != null) {
+			file.getAbsoluteFile().getParentFile().mkdirs();
+		}
+
+		this.writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+		this.runLabel = runLabel;
+		this.batchSize = Math.max(1, batchSize);
+
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeRecords();
+			}
+		}, "item-result-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Queues the outcome of checking one item. Blocks only if the writer has
+	 * fallen a full queue behind.
+	 *
+	 * @param page                 the results page number the item is on
+	 * @param index                the item's overall position in the results,
+	 *                             starting at 1
+	 * @param description          the item's description
+	 * @param matched              whether the item passed the check
+	 * @param durationMilliseconds time spent checking the item
+	 */
+	public void write(int page, int index, String description, boolean matched, long durationMilliseconds) {
+		StringBuilder record = new StringBuilder(128);
+		record.append("{\"timestamp\":").append(System.currentTimeMillis());
+		record.append(",\"run\":");
+		appendJsonString(record, runLabel);
+		record.append(",\"page\":").append(page);
+		record.append(",\"index\":").append(index);
+		record.append(",\"description\":");
+		appendJsonString(record, description);
+		record.append(",\"matched\":").append(matched);
+		record.append(",\"durationMs\":").append(durationMilliseconds);
+		record.append('}');
+
+		try {
+			queue.put(record.toString());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes any queued records, then stops the writer thread, which closes the
+	 * file when it finishes.
+	 *
+	 * @throws IOException if any record could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		boolean endQueued = false;
+		try {
+			queue.put(END_OF_RECORDS);
+			endQueued = true;
+			writerThread.join();
+		} catch (InterruptedException e) {
+			// the writer thread still finishes (and closes the file) on its own once it
+			// reaches the end of the records; stop it if they couldn't be ended
+			if (!endQueued) {
+				writerThread.interrupt();
+			}
+			Thread.currentThread().interrupt();
+		}
+
+		if (writeError != null) {
+			throw writeError;
+		}
+	}
+
+	/**
+	 * Runs on the writer thread, collecting records off the queue into batches and
+	 * flushing each batch when it is full or when the queue goes idle. Closes the file when
+	 * done, so it is never closed while a batch is being written.
+	 */
+	private void writeRecords() {
+		try {
+			writeBatches();
+		} finally {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				if (writeError == null) {
+					writeError = e;
+				}
+			}
+		}
+	}
+
+	private void writeBatches() {
+		List<String> batch = new ArrayList<String>(batchSize);
+		boolean done = false;
+
+		while (!done) {
+			boolean idle = false;
+			try {
+				String record = queue.poll(IDLE_FLUSH_MILLISECONDS, TimeUnit.MILLISECONDS);
+				if (record == null) {
+					idle = true;
+				} else {
+					batch.add(record);
+					queue.drainTo(batch, batchSize - batch.size());
+				}
+			} catch (InterruptedException e) {
+				done = true;
+			}
+
+			done |= batch.remove(END_OF_RECORDS);
+
+			// keep adding to the batch until it is full, unless the records stop coming
+			if (batch.size() >= batchSize || ((idle || done) && !batch.isEmpty())) {
+				writeBatch(batch);
+			}
+		}
+	}
+
+	/**
+	 * Writes and flushes a batch of records, then clears it.
+	 */
+	private void writeBatch(List<String> batch) {
+		try {
+			for (String line : batch) {
+				writer.write(line);
+				writer.write('\n');
+			}
+			writer.flush();
+		} catch (IOException e) {
+			// keep draining so the test thread never blocks; report on close
+			writeError = e;
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Appends a value as a quoted JSON string, escaping as needed.
+	 *
+	 * @param sb    the builder to append to
+	 * @param value the value to append, written as null if null
+	 */
+	private static void appendJsonString(StringBuilder sb, String value) {
+		if (value == null) {
+			sb.append("null");
+			return;
+		}
+
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+}
@@ -0,0 +1,237 @@
+package bryankier.testframework;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Central registry of the page objects' locators. Each locator is declared once,
+ * as a constant initialized with {@link #register(String, String, By, boolean)},
+ * which:
+ * <ul>
+ * <li>compiles simple XPath locators to equivalent CSS selectors, which
+ * browsers evaluate faster (see {@link #compile(By)})</li>
+ * <li>records which page each locator belongs to, so all of a page's locators
+ * can be checked against the loaded page in one call
+ * ({@link #findUnresolved(WebDriver, String)}) and a broken locator fails in
+ * milliseconds instead of after a full find timeout</li>
+ * </ul>
+ */
+public class LocatorRegistry {
+
+	/** One XPath step: axis separator, tag (or *), and predicates */
+	private static final Pattern XPATH_STEP = Pattern.compile("(//|/)([A-Za-z][\\w-]*|\\*)((?:\\[[^\\]]*\\])*)");
+	/** An exact attribute match predicate, [@name='value'] */
+	private static final Pattern XPATH_ATTRIBUTE_PREDICATE = Pattern.compile("\\[@([\\w-]+)='([^']*)'\\]");
+
+	/**
+	 * Counts the matches for each selector (arguments[0] is a list of [kind,
+	 * selector] pairs, as returned by WebDriverHelper.toBrowserSelector), or -1
+	 * if the selector is invalid.
+	 */
+	private static final String COUNT_SCRIPT = "return arguments[0].map(function(s) {"
+			+ "  try {"
+			+ "    if (s[0] === 'xpath') {"
+			+ "      return document.evaluate(s[1], document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null)"
+			+ "          .snapshotLength; }"
+			+ "    return document.querySelectorAll(s[1]).length;"
+			+ "  } catch (e) { return -1; }"
+			+ "});";
+
+	private static final List<Entry> ENTRIES = new ArrayList<Entry>();
+
+	/**
+	 * A registered locator
+	 */
+	static class Entry {
+		final String page;
+		final String name;
+		final By locator;
+		final boolean expectedOnPage;
+
+		Entry(String page, String name, By locator, boolean expectedOnPage) {
+			this.page = page;
+			this.name = name;
+			this.locator = locator;
+			this.expectedOnPage = expectedOnPage;
+		}
+	}
+
+	/**
+	 * Registers a locator, compiling it to CSS if possible.
+	 *
+	 * @param page           the name of the page the locator is used on
+	 * @param name           the locator's name, normally its constant name
+	 * @param locator        the locator
+	 * @param expectedOnPage if true, the locator must find something whenever the
+	 *                       page is loaded; false for optional elements like
+	 *                       dialogs that only sometimes appear
+	 * @return the locator to use, compiled to CSS where possible
+	 */
+	public static By register(String page, String name, By locator, boolean expectedOnPage) {
+		By compiled = compile(locator);
+
+		synchronized (ENTRIES) {
+			ENTRIES.add(new Entry(page, name, compiled, expectedOnPage));
+		}
+
+		return compiled;
+	}
+
+	/**
+	 * Compiles an XPath locator to an equivalent CSS selector locator, if it only
+	 * uses child (/) and descendant (//) steps with tag names and exact attribute
+	 * matches, for example {@code //div[@role='dialog']/button[@name='x']}.
+	 * Anything else (text(), parent steps, positions, functions) is returned as is,
+	 * as are relative paths ({@code .//}) of more than one step: a CSS selector
+	 * used to find child elements can match its ancestor steps outside the parent
+	 * element, where the XPath can't.
+	 *
+	 * @param locator the locator to compile
+	 * @return the CSS locator, or the original locator if it can't be compiled
+	 */
+	public static By compile(By locator) {
+		String[] selector = WebDriverHelper.toBrowserSelector(locator);
+		if (selector == null || !"xpath".equals(selector[0])) {
+			return locator;
+		}
+
+		String xpath = selector[1];
+		// a leading period makes the path relative, which is the default for CSS
+		// selectors used to find child elements
+		boolean relative = xpath.startsWith(".//");
+		if (relative) {
+			xpath = xpath.substring(1);
+		}
+		if (!xpath.startsWith("//")) {
+			return locator;
+		}
+
+		StringBuilder css = new StringBuilder();
+		Matcher step = XPATH_STEP.matcher(xpath);
+		int position = 0;
+
+		while (step.find() && step.start() == position) {
+			if (css.length() > 0) {
+				if (relative) {
+					return locator;
+				}
+				css.append(step.group(1).equals("//") ? " " : " > ");
+			}
+			css.append(step.group(2));
+
+			String predicates = step.group(3);
+			Matcher predicate = XPATH_ATTRIBUTE_PREDICATE.matcher(predicates);
+			int predicatePosition = 0;
+			while (predicate.find() && predicate.start() == predicatePosition) {
+				css.append('[').append(predicate.group(1)).append("='").append(predicate.group(2)).append("']");
+				predicatePosition = predicate.end();
+			}
+			if (predicatePosition != predicates.length()) {
+				return locator;
+			}
+
+			position = step.end();
+		}
+
+		return position == xpath.length() ? By.cssSelector(css.toString()) : locator;
+	}
+
+	/**
+	 * @param locator the locator to look up
+	 * @return the page and name the locator was first registered with, as
+	 *         page.NAME, or null if it isn't registered
+	 */
+	public static String findName(By locator) {
+		synchronized (ENTRIES) {
+			for (Entry entry : ENTRIES) {
+				if (entry.locator.equals(locator)) {
+					return entry.page + "." + entry.name;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param locator the locator to look up
+	 * @return true if the locator is registered only as optional (not expected on
+	 *         any page), so not finding it is normal
+	 */
+	public static boolean isOptional(By locator) {
+		boolean registered = false;
+
+		synchronized (ENTRIES) {
+			for (Entry entry : ENTRIES) {
+				if (entry.locator.equals(locator)) {
+					if (entry.expectedOnPage) {
+						return false;
+					}
+					registered = true;
+				}
+			}
+		}
+
+		return registered;
+	}
+
+	/**
+	 * Checks all of a page's expected locators against the page the driver is on,
+	 * in one call to the browser (plus one driver find per locator that can't be
+	 * evaluated in the browser, like link text).
+	 *
+	 * @param driver the automation web driver, on the loaded page
+	 * @param page   the page name the locators were registered with
+	 * @return the names of the expected locators that found nothing or are
+	 *         invalid, or an empty list if they all resolve
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<String> findUnresolved(WebDriver driver, String page) {
+		List<Entry> browserChecked = new ArrayList<Entry>();
+		List<List<String>> selectors = new ArrayList<List<String>>();
+		List<String> unresolved = new ArrayList<String>();
+
+		synchronized (ENTRIES) {
+			for (Entry entry : ENTRIES) {
+				if (!entry.page.equals(page) || !entry.expectedOnPage) {
+					continue;
+				}
+
+				String[] selector = WebDriverHelper.toBrowserSelector(entry.locator);
+				if (selector != null && driver instanceof JavascriptExecutor) {
+					browserChecked.add(entry);
+					List<String> pair = new ArrayList<String>();
+					pair.add(selector[0]);
+					pair.add(selector[1]);
+					selectors.add(pair);
+				} else {
+					try {
+						if (driver.findElements(entry.locator).isEmpty()) {
+							unresolved.add(entry.name);
+						}
+					} catch (WebDriverException e) {
+						unresolved.add(entry.name);
+					}
+				}
+			}
+		}
+
+		if (!selectors.isEmpty()) {
+			List<Number> counts = (List<Number>) ((JavascriptExecutor) driver).executeScript(COUNT_SCRIPT, selectors);
+			for (int i = 0; i < counts.size(); i++) {
+				if (counts.get(i).intValue() <= 0) {
+					unresolved.add(browserChecked.get(i).name);
+				}
+			}
+		}
+
+		return unresolved;
+	}
+}
@@ -0,0 +1,110 @@
+package bryankier.testframework;
+
+import java.util.Map;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Browser-side load timing for the current page, from the Navigation Timing and
+ * Paint Timing APIs. Times are in milliseconds from the start of the
+ * navigation, or -1 if the browser hasn't reported them (yet).
+ * <p>
+ * Note that these only change on a full page load; content changed in place by
+ * the page's scripts keeps the timing of the last full load.
+ */
+public class PageTiming {
+
+	public static final String TTFB = "ttfb";
+	public static final String DOM_CONTENT_LOADED = "domContentLoaded";
+	public static final String LOAD = "load";
+	public static final String FIRST_CONTENTFUL_PAINT = "firstContentfulPaint";
+
+	static final String TIMING_SCRIPT = "var nav = performance.getEntriesByType('navigation')[0];"
+			+ "var fcp = performance.getEntriesByName('first-contentful-paint')[0];"
+			+ "if (!nav) { return null; }"
+			+ "return { ttfb: nav.responseStart, domContentLoaded: nav.domContentLoadedEventEnd,"
+			+ "  load: nav.loadEventEnd, firstContentfulPaint: fcp ? fcp.startTime : 0 };";
+
+	private final String url;
+	private final long ttfb;
+	private final long domContentLoaded;
+	private final long load;
+	private final long firstContentfulPaint;
+
+	private PageTiming(String url, long ttfb, long domContentLoaded, long load, long firstContentfulPaint) {
+		this.url = url;
+		this.ttfb = ttfb;
+		this.domContentLoaded = domContentLoaded;
+		this.load = load;
+		this.firstContentfulPaint = firstContentfulPaint;
+	}
+
+	/**
+	 * Reads the timing of the page the driver is currently on.
+	 *
+	 * @param driver the automation web driver
+	 * @return the timing, with all values -1 if it couldn't be read
+	 */
+	@SuppressWarnings("unchecked")
+	public static PageTiming collect(WebDriver driver) {
+		try {
+			Object result = ((JavascriptExecutor) driver).executeScript(TIMING_SCRIPT);
+			if (result instanceof Map) {
+				Map<String, Object> timing = (Map<String, Object>) result;
+				return new PageTiming(driver.getCurrentUrl(), toMilliseconds(timing.get(TTFB)),
+						toMilliseconds(timing.get(DOM_CONTENT_LOADED)), toMilliseconds(timing.get(LOAD)),
+						toMilliseconds(timing.get(FIRST_CONTENTFUL_PAINT)));
+			}
+		} catch (WebDriverException | ClassCastException e) {
+			// report as unavailable
+		}
+
+		return new PageTiming(null, -1, -1, -1, -1);
+	}
+
+	/**
+	 * @param value a time reported by the browser
+	 * @return the time in whole milliseconds, or -1 if not reported (zero or
+	 *         missing)
+	 */
+	private static long toMilliseconds(Object value) {
+		if (!(value instanceof Number) || ((Number) value).doubleValue() <= 0) {
+			return -1;
+		}
+		return Math.round(((Number) value).doubleValue());
+	}
+
+	/**
+	 * Gets a metric by name.
+	 *
+	 * @param metric one of {@link #TTFB}, {@link #DOM_CONTENT_LOADED},
+	 *               {@link #LOAD} or {@link #FIRST_CONTENTFUL_PAINT}
+	 * @return the time in milliseconds, or -1 if not available
+	 */
+	public long get(String metric) {
+		switch (metric) {
+		case TTFB:
+			return ttfb;
+		case DOM_CONTENT_LOADED:
+			return domContentLoaded;
+		case LOAD:
+			return load;
+		case FIRST_CONTENTFUL_PAINT:
+			return firstContentfulPaint;
+		default:
+			throw new IllegalArgumentException("Metric '" + metric + "' is not a page timing metric.");
+		}
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	@Override
+	public String toString() {
+		return "PageTiming [url=" + url + ", ttfb=" + ttfb + ", domContentLoaded=" + domContentLoaded + ", load="
+				+ load + ", firstContentfulPaint=" + firstContentfulPaint + "]";
+	}
+}
@@ -0,0 +1,68 @@
+package bryankier.testframework;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-page limits for the browser-side load timing in {@link PageTiming}.
+ * <p>
+ * A budget is set with a system property named budget.[page].[metric], in
+ * milliseconds (for example, budget.search.ttfb=800). Pages without their own
+ * budget for a metric use budget.default.[metric], and then the defaults below.
+ * A budget of 0 turns the check off.
+ */
+public class PerformanceBudget {
+
+	static final String[] METRICS = { PageTiming.TTFB, PageTiming.DOM_CONTENT_LOADED, PageTiming.LOAD,
+			PageTiming.FIRST_CONTENTFUL_PAINT };
+	static final long[] DEFAULT_BUDGETS = { 1500, 4000, 8000, 3000 };
+
+	/**
+	 * Gets the budget for a metric on a page.
+	 *
+	 * @param page   the page name (home, search, cart, etc.)
+	 * @param metric the metric name
+	 * @return the budget in milliseconds, or 0 if not checked
+	 */
+	public static long getBudget(String page, String metric) {
+		long defaultBudget = 0;
+		for (int i = 0; i < METRICS.length; i++) {
+			if (METRICS[i].equals(metric)) {
+				defaultBudget = DEFAULT_BUDGETS[i];
+			}
+		}
+
+		defaultBudget = Long.getLong("budget.default." + metric, defaultBudget);
+		return Long.getLong("budget." + page + "." + metric, defaultBudget);
+	}
+
+	/**
+	 * Checks a page's timing against its budgets.
+	 *
+	 * @param page   the page name (home, search, cart, etc.)
+	 * @param timing the page's timing
+	 * @return a message for each metric over budget, or an empty list if all are
+	 *         within budget (metrics that weren't reported aren't checked)
+	 */
+	public static List<String> findViolations(String page, PageTiming timing) {
+		List<String> violations = new ArrayList<String>();
+
+		for (String metric : METRICS) {
+			long budget = getBudget(page, metric);
+			long actual = timing.get(metric);
+			if (budget > 0 && actual > budget) {
+				violations.add("Page '" + page + "' " + metric + " of " + actual + " ms is over its budget of "
+						+ budget + " ms (url=" + timing.getUrl() + ").");
+			}
+		}
+
+		return violations;
+	}
+
+	/**
+	 * @return the names of the metrics that have budgets
+	 */
+	public static String[] getMetrics() {
+		return METRICS.clone();
+	}
+}
@@ -0,0 +1,22 @@
+package bryankier.testframework;
+
+/**
+ * Thrown when {@link SiteHealthMonitor} has found the site (or the browser
+ * drivers) degraded, so that tests fail fast instead of each waiting out its
+ * full timeouts.
+ * <p>
+ * This is deliberately not a WebDriverException, so it isn't swallowed by the
+ * finds in {@link WebDriverHelper} that return null or an empty list when
+ * nothing is found.
+ */
+public class SiteDegradedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message the reason the site is considered degraded
+	 */
+	public SiteDegradedException(String message) {
+		super(message);
+	}
+}
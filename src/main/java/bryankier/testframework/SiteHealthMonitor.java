@@ -0,0 +1,191 @@
+package bryankier.testframework;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker shared by all tests in the JVM. It watches the outcomes of
+ * finds and navigations across all running tests and, when too many of the
+ * recent ones fail or time out, opens the circuit: finds and navigations (even
+ * those already waiting) throw {@link SiteDegradedException} right away, and
+ * new tests wait in {@link #awaitHealthy(String, long)} until a probe of the
+ * site succeeds.
+ * <p>
+ * Configured with system properties:
+ * <ul>
+ * <li>health.window - number of recent outcomes considered (default 50)</li>
+ * <li>health.minSamples - outcomes needed before the circuit can open (default
+ * 10)</li>
+ * <li>health.failureRate - failure rate, 0 to 1, that opens the circuit
+ * (default 0.5)</li>
+ * <li>health.probeIntervalMs - time between probes while open (default
+ * 10000)</li>
+ * </ul>
+ * The monitor can be turned off with {@link #setEnabled(boolean)}, for example
+ * for load runs, where slowing down when the site degrades would hide the
+ * limit being measured.
+ */
+public class SiteHealthMonitor {
+
+	static final int WINDOW_SIZE = Math.max(1, Integer.getInteger("health.window", 50));
+	static final int MIN_SAMPLES = Integer.getInteger("health.minSamples", 10);
+	static final double FAILURE_RATE = Double.parseDouble(System.getProperty("health.failureRate", "0.5"));
+	static final long PROBE_INTERVAL_MILLISECONDS = Long.getLong("health.probeIntervalMs", 10000);
+
+	/** Ring buffer of recent outcomes, true for a failure */
+	private static final boolean[] recentFailures = new boolean[WINDOW_SIZE];
+	private static int nextIndex = 0;
+	private static int sampleCount = 0;
+	private static int failureCount = 0;
+
+	private static volatile String openReason = null;
+	private static long lastProbeTime = 0;
+	private static volatile boolean enabled = true;
+
+	/**
+	 * Turns the monitor on or off. While it is off, outcomes aren't recorded and
+	 * the circuit never opens, so nothing fails fast or waits for the site.
+	 *
+	 * @param isEnabled whether the monitor should watch outcomes
+	 */
+	public static synchronized void setEnabled(boolean isEnabled) {
+		enabled = isEnabled;
+		if (!isEnabled) {
+			openReason = null;
+		}
+	}
+
+	/**
+	 * Records the outcome of a find or navigation, opening the circuit if the
+	 * recent failure rate crosses the threshold.
+	 *
+	 * @param success     whether it succeeded (found something, page loaded)
+	 * @param description what was attempted, for the reason if the circuit opens
+	 */
+	public static synchronized void record(boolean success, String description) {
+		if (!enabled) {
+			return;
+		}
+		if (sampleCount == WINDOW_SIZE && recentFailures[nextIndex]) {
+			failureCount--;
+		}
+		recentFailures[nextIndex] = !success;
+		if (!success) {
+			failureCount++;
+		}
+		nextIndex = (nextIndex + 1) % WINDOW_SIZE;
+		sampleCount = Math.min(WINDOW_SIZE, sampleCount + 1);
+
+		if (openReason == null && sampleCount >= MIN_SAMPLES && failureCount >= FAILURE_RATE * sampleCount) {
+			openReason = "Site degraded: " + failureCount + " of the last " + sampleCount
+					+ " finds and navigations failed (most recently: " + description + ").";
+			lastProbeTime = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Fails fast if the circuit is open.
+	 *
+	 * @throws SiteDegradedException if the site is considered degraded
+	 */
+	public static void checkCircuit() {
+		String reason = openReason;
+		if (reason != null) {
+			throw new SiteDegradedException(reason);
+		}
+	}
+
+	/**
+	 * @return true if the circuit is open (the site is considered degraded)
+	 */
+	public static boolean isOpen() {
+		return openReason != null;
+	}
+
+	/**
+	 * Returns right away if the circuit is closed. Otherwise waits, probing the
+	 * site at the probe interval (one probe at a time across all waiting tests),
+	 * until a probe succeeds and closes the circuit.
+	 *
+	 * @param probeUrl            a URL on the site that should load quickly
+	 * @param maxWaitMilliseconds the maximum time to wait for the site to recover
+	 * @throws SiteDegradedException if the site hasn't recovered in time
+	 */
+	public static void awaitHealthy(String probeUrl, long maxWaitMilliseconds) {
+		long giveUpTime = System.currentTimeMillis() + maxWaitMilliseconds;
+
+		while (isOpen()) {
+			if (probeIfDue(probeUrl)) {
+				return;
+			}
+
+			if (System.currentTimeMillis() >= giveUpTime) {
+				checkCircuit();
+			}
+
+			try {
+				TimeUnit.MILLISECONDS.sleep(Math.min(1000, PROBE_INTERVAL_MILLISECONDS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				checkCircuit();
+			}
+		}
+	}
+
+	/**
+	 * Probes the site if the circuit is open and a probe is due, closing the
+	 * circuit (and clearing the recent outcomes) if it succeeds.
+	 *
+	 * @return true if the circuit is closed
+	 */
+	private static boolean probeIfDue(String probeUrl) {
+		synchronized (SiteHealthMonitor.class) {
+			if (openReason == null) {
+				return true;
+			}
+			if (System.currentTimeMillis() - lastProbeTime < PROBE_INTERVAL_MILLISECONDS) {
+				return false;
+			}
+			lastProbeTime = System.currentTimeMillis();
+		}
+
+		if (!probe(probeUrl)) {
+			return false;
+		}
+
+		reset();
+		return true;
+	}
+
+	/**
+	 * Closes the circuit and clears the recent outcomes.
+	 */
+	static synchronized void reset() {
+		openReason = null;
+		nextIndex = 0;
+		sampleCount = 0;
+		failureCount = 0;
+	}
+
+	/**
+	 * @param url the URL to request
+	 * @return true if the URL responds without a server error
+	 */
+	static boolean probe(String url) {
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) new URL(url).openConnection();
+			connection.setConnectTimeout(5000);
+			connection.setReadTimeout(10000);
+			return connection.getResponseCode() < 500;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package bryankier.testframework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the duration and outcome of each named step across many concurrent
+ * runs of a journey, and summarizes throughput and latency percentiles per
+ * step. Thread safe.
+ */
+public class StepLatencyStats {
+
+	private final Map<String, List<Long>> durations = new LinkedHashMap<String, List<Long>>();
+	private final Map<String, Integer> failures = new LinkedHashMap<String, Integer>();
+	private final long startTime = System.currentTimeMillis();
+
+	/**
+	 * Records one run of a step.
+	 *
+	 * @param step                 the step name
+	 * @param durationMilliseconds time the step took
+	 * @param success              whether the step succeeded
+	 */
+	public synchronized void record(String step, long durationMilliseconds, boolean success) {
+		if (!durations.containsKey(step)) {
+			durations.put(step, new ArrayList<Long>());
+			failures.put(step, 0);
+		}
+
+		durations.get(step).add(durationMilliseconds);
+		if (!success) {
+			failures.put(step, failures.get(step) + 1);
+		}
+	}
+
+	/**
+	 * Builds a summary with one line per step, in the order steps were first
+	 * recorded: count, failures, throughput since this object was created, and
+	 * latency percentiles.
+	 *
+	 * @return the summary text
+	 */
+	public synchronized String report() {
+		double elapsedSeconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-32s %7s %7s %9s %8s %8s %8s %8s%n", "step", "count", "failed", "per sec",
+				"p50 ms", "p90 ms", "p99 ms", "max ms"));
+		for (Map.Entry<String, List<Long>> entry : durations.entrySet()) {
+			List<Long> sorted = new ArrayList<Long>(entry.getValue());
+			Collections.sort(sorted);
+			report.append(String.format("%-32s %7d %7d %9.2f %8d %8d %8d %8d%n", entry.getKey(), sorted.size(),
+					failures.get(entry.getKey()), sorted.size() / elapsedSeconds, percentile(sorted, 50),
+					percentile(sorted, 90), percentile(sorted, 99), sorted.get(sorted.size() - 1)));
+		}
+
+		return report.toString();
+	}
+
+	/**
+	 * Gets a percentile from sorted values using the nearest-rank method.
+	 *
+	 * @param sorted     the values, sorted ascending
+	 * @param percentile the percentile, 0 to 100
+	 * @return the value at the percentile
+	 */
+	static long percentile(List<Long> sorted, int percentile) {
+		int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+		return sorted.get(Math.min(sorted.size() - 1, Math.max(0, rank - 1)));
+	}
+}
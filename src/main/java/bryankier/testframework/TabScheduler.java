@@ -0,0 +1,320 @@
+package bryankier.testframework;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.internal.WrapsElement;
+
+/**
+ * Runs several independent scenarios in separate tabs of one browser session,
+ * so more scenarios fit on a host than with one browser process each.
+ * <p>
+ * Each scenario runs on its own thread with its own tab driver from
+ * {@link #openTab()}. A tab driver (and every element, window, navigation,
+ * etc. object it returns) is bound to its tab: each command takes the session's
+ * lock, switches to the tab if another tab was the last to use the session, and
+ * runs. Nothing holds the lock while a find is waiting between polls, so the
+ * other tabs take turns using the session during each other's waits. Page
+ * objects given a tab driver work as they do with a browser to themselves.
+ * <p>
+ * Tabs share the session's cookies and storage, so scenarios that change
+ * session state (a shopping cart, for example) affect each other.
+ * <p>
+ * If a run times out, the scheduler is stopped: its tab drivers refuse any
+ * further commands, so the session can be quit safely once the run returns.
+ */
+public class TabScheduler {
+
+	private final WebDriver driver;
+	private final ReentrantLock lock = new ReentrantLock(true);
+	private String currentHandle;
+	private boolean firstTabUsed = false;
+	private volatile boolean stopped = false;
+
+	/**
+	 * A scenario to run in its own tab
+	 */
+	public interface TabScenario {
+		/**
+		 * @param tabDriver a driver bound to the scenario's tab
+		 */
+		void run(WebDriver tabDriver) throws Exception;
+	}
+
+	/**
+	 * @param driver the browser session to run the tabs in. The scheduler's tab
+	 *               drivers should be used instead of it while tabs are open.
+	 */
+	public TabScheduler(WebDriver driver) {
+		this.driver = driver;
+		currentHandle = driver.getWindowHandle();
+	}
+
+	/**
+	 * Opens a tab (using the session's existing window for the first one) and
+	 * gets a driver bound to it. Quitting the tab driver closes the tab, not the
+	 * session.
+	 *
+	 * @return the tab driver
+	 * @throws WebDriverException if a new tab couldn't be opened
+	 */
+	public WebDriver openTab() {
+		lock.lock();
+		try {
+			String handle;
+			if (!firstTabUsed) {
+				firstTabUsed = true;
+				handle = currentHandle;
+			} else {
+				Set<String> before = driver.getWindowHandles();
+				((JavascriptExecutor) driver).executeScript("window.open('about:blank', '_blank');");
+				Set<String> opened = new HashSet<String>(driver.getWindowHandles());
+				opened.removeAll(before);
+				if (opened.isEmpty()) {
+					throw new WebDriverException("Unable to open a new tab.");
+				}
+				handle = opened.iterator().next();
+			}
+
+			Tab tab = new Tab(handle);
+			tab.driver = (WebDriver) bind(driver, tab);
+			return tab.driver;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Runs each scenario in its own tab, all at the same time, and waits for them
+	 * to finish.
+	 * <p>
+	 * If they don't all finish in time, the unfinished ones are interrupted and
+	 * the scheduler is stopped, so they fail at their next command. The run still
+	 * waits for any command in progress to finish before returning, so nothing is
+	 * using the session afterward.
+	 *
+	 * @param scenarios      the scenarios to run
+	 * @param timeoutSeconds the maximum time to wait for all of them
+	 * @return each scenario's error, in the same order, or null for a scenario
+	 *         that completed without one. A scenario that didn't finish in time
+	 *         has a TimeoutException.
+	 */
+	public List<Throwable> run(List<TabScenario> scenarios, long timeoutSeconds) throws InterruptedException {
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		List<WebDriver> tabDrivers = new ArrayList<WebDriver>();
+		for (int i = 0; i < scenarios.size(); i++) {
+			errors.add(null);
+			tabDrivers.add(openTab());
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, scenarios.size()));
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < scenarios.size(); i++) {
+			final int index = i;
+			final TabScenario scenario = scenarios.get(i);
+			final WebDriver tabDriver = tabDrivers.get(i);
+			futures.add(pool.submit(new Runnable() {
+				public void run() {
+					try {
+						scenario.run(tabDriver);
+					} catch (Throwable t) {
+						synchronized (errors) {
+							// keep the timeout of a scenario stopped for running too long
+							if (errors.get(index) == null) {
+								errors.set(index, t);
+							}
+						}
+					}
+				}
+			}));
+		}
+
+		pool.shutdown();
+		if (!pool.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+			synchronized (errors) {
+				for (int i = 0; i < futures.size(); i++) {
+					if (!futures.get(i).isDone()) {
+						errors.set(i, new TimeoutException(
+								"Scenario " + (i + 1) + " didn't finish within " + timeoutSeconds + " seconds."));
+					}
+				}
+			}
+
+			stopped = true;
+			pool.shutdownNow();
+			// waits out the command in progress, if any; every command after it fails
+			lock.lock();
+			lock.unlock();
+		}
+
+		synchronized (errors) {
+			return new ArrayList<Throwable>(errors);
+		}
+	}
+
+	/**
+	 * An open tab and its bound driver
+	 */
+	private static class Tab {
+		final String handle;
+		WebDriver driver;
+
+		Tab(String handle) {
+			this.handle = handle;
+		}
+	}
+
+	/**
+	 * Runs every call on the target (the session's driver, or an object it
+	 * returned) in the tab, holding the session's lock
+	 */
+	private class TabBinding implements InvocationHandler {
+		final Object target;
+		final Tab tab;
+
+		TabBinding(Object target, Tab tab) {
+			this.target = target;
+			this.tab = tab;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				if (method.getName().equals("equals")) {
+					return args[0] != null && target.equals(unbind(args[0]));
+				}
+				return method.invoke(target, args);
+			}
+			if (method.getDeclaringClass() == WrapsElement.class) {
+				return target;
+			}
+			if (method.getDeclaringClass() == WrapsDriver.class) {
+				return tab.driver;
+			}
+
+			lock.lock();
+			try {
+				if (stopped) {
+					throw new WebDriverException("The tab scheduler was stopped, because its run timed out.");
+				}
+				if (!tab.handle.equals(currentHandle)) {
+					driver.switchTo().window(tab.handle);
+					currentHandle = tab.handle;
+				}
+
+				if (target == driver && method.getName().equals("quit")) {
+					// the session is shared, so only close this tab
+					driver.close();
+					currentHandle = null;
+					return null;
+				}
+
+				Object result = method.invoke(target, unbindArguments(args));
+				if (result == driver) {
+					return tab.driver;
+				}
+				return bindResult(result, method.getReturnType(), tab);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Binds a result to the tab if it is an element, a list of elements, or one
+	 * of Selenium's session interfaces (options, navigation, etc.).
+	 */
+	private Object bindResult(Object result, Class<?> returnType, Tab tab) {
+		if (result instanceof WebElement) {
+			return bind(result, tab);
+		}
+
+		if (result instanceof List) {
+			List<Object> bound = new ArrayList<Object>();
+			for (Object item : (List<?>) result) {
+				bound.add(item instanceof WebElement ? bind(item, tab) : item);
+			}
+			return bound;
+		}
+
+		if (result != null && returnType.isInterface() && returnType.getName().startsWith("org.openqa.selenium")) {
+			return bind(result, tab);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates a proxy with all the target's public interfaces, bound to the tab
+	 */
+	private Object bind(Object target, Tab tab) {
+		Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+		for (Class<?> c = target.getClass(); c != null; c = c.getSuperclass()) {
+			for (Class<?> i : c.getInterfaces()) {
+				if (Modifier.isPublic(i.getModifiers())) {
+					interfaces.add(i);
+				}
+			}
+		}
+		if (target instanceof WebElement) {
+			// lets Selenium unwrap bound elements passed to scripts, actions, etc.
+			interfaces.add(WrapsElement.class);
+		}
+
+		return Proxy.newProxyInstance(TabScheduler.class.getClassLoader(), interfaces.toArray(new Class<?>[0]),
+				new TabBinding(target, tab));
+	}
+
+	private static Object unbind(Object argument) {
+		if (argument != null && Proxy.isProxyClass(argument.getClass())
+				&& Proxy.getInvocationHandler(argument) instanceof TabScheduler.TabBinding) {
+			return ((TabBinding) Proxy.getInvocationHandler(argument)).target;
+		}
+		if (argument instanceof Object[]) {
+			return unbindArguments((Object[]) argument);
+		}
+		if (argument instanceof List) {
+			List<Object> unbound = new ArrayList<Object>();
+			for (Object item : (List<?>) argument) {
+				unbound.add(unbind(item));
+			}
+			return unbound;
+		}
+
+		return argument;
+	}
+
+	private static Object[] unbindArguments(Object[] args) {
+		if (args == null) {
+			return null;
+		}
+
+		// keep the array type, for varargs like sendKeys(CharSequence...)
+		Object[] unbound = (Object[]) Array.newInstance(args.getClass().getComponentType(), args.length);
+		for (int i = 0; i < args.length; i++) {
+			unbound[i] = unbind(args[i]);
+		}
+		return unbound;
+	}
+}
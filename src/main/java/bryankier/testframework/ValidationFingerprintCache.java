@@ -0,0 +1,134 @@
+package bryankier.testframework;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Persistent local cache of content fingerprints for pages that have already
+ * passed validation, so repeated runs can skip item-level checks on pages that
+ * haven't changed since.
+ * <p>
+ * Entries are keyed by whatever identifies the validation (environment, search
+ * text, expected text, page number, etc.; see {@link #buildKey(String...)}) and
+ * stored as a properties file between runs.
+ */
+public class ValidationFingerprintCache {
+
+	private final File file;
+	private final Properties fingerprints = new Properties();
+	private boolean changed = false;
+
+	/**
+	 * Loads the cache from the file, if it exists.
+	 *
+	 * @param filePath path of the properties file holding the cache
+	 */
+	public ValidationFingerprintCache(String filePath) {
+		this.file = new File(filePath);
+
+		if (file.isFile()) {
+			try (InputStream in = new FileInputStream(file)) {
+				fingerprints.load(in);
+			} catch (IOException e) {
+				// an unreadable cache only means nothing is skipped this run
+				fingerprints.clear();
+			}
+		}
+	}
+
+	/**
+	 * Builds a cache key from the parts that identify a validation.
+	 *
+	 * @param parts the environment, search text, page number, etc.
+	 * @return the key
+	 */
+	public static String buildKey(String... parts) {
+		return String.join("|", parts).toLowerCase();
+	}
+
+	/**
+	 * Computes a fingerprint of page content from its items, in order.
+	 *
+	 * @param items a string per item on the page (description, ID, etc.)
+	 * @return a hex SHA-256 digest of the items
+	 */
+	public static String fingerprint(List<String> items) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String item : items) {
+				digest.update(String.valueOf(item).getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) '\n');
+			}
+
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	/**
+	 * Checks whether content with this fingerprint already passed validation for
+	 * the key.
+	 *
+	 * @param key         the validation key
+	 * @param fingerprint the fingerprint of the current content
+	 * @return true if the same content has already passed
+	 */
+	public synchronized boolean isValidated(String key, String fingerprint) {
+		return fingerprint != null && fingerprint.equals(fingerprints.getProperty(key));
+	}
+
+	/**
+	 * Records that content with this fingerprint passed validation for the key.
+	 *
+	 * @param key         the validation key
+	 * @param fingerprint the fingerprint of the validated content
+	 */
+	public synchronized void markValidated(String key, String fingerprint) {
+		if (fingerprint != null && !fingerprint.equals(fingerprints.setProperty(key, fingerprint))) {
+			changed = true;
+		}
+	}
+
+	/**
+	 * Removes any passing fingerprint for the key, e.g. after a failure.
+	 *
+	 * @param key the validation key
+	 */
+	public synchronized void invalidate(String key) {
+		changed |= fingerprints.remove(key) != null;
+	}
+
+	/**
+	 * Writes the cache to its file if anything changed.
+	 *
+	 * @throws IOException if the file can't be written
+	 */
+	public synchronized void save() throws IOException {
+		if (!changed) {
+			return;
+		}
+
+		if (file.getAbsoluteFile().getParentFile() != null) {
+			file.getAbsoluteFile().getParentFile().mkdirs();
+		}
+
+		try (OutputStream out = new FileOutputStream(file)) {
+			fingerprints.store(out, "Fingerprints of pages that passed validation");
+		}
+		changed = false;
+	}
+}
@@ -0,0 +1,183 @@
+package bryankier.testframework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openqa.selenium.By;
+
+import bryankier.testframework.events.WaitEvent;
+
+/**
+ * Collects timing for every find made through {@link WebDriverHelper}, per
+ * locator, and reports where the waiting time goes: call count, hit/miss
+ * ratio, average time to success, and total time lost to finds that waited out
+ * their timeout without finding anything (typically optional lookups for
+ * dialogs that weren't there).
+ * <p>
+ * Locators are reported by the page and name they were registered with in
+ * {@link LocatorRegistry} (home.SEARCH_RESULT_BOX_lOCATOR, etc.), or by the
+ * locator itself if they aren't registered.
+ * <p>
+ * Each find is also emitted as a Java Flight Recorder event, so a run recorded
+ * with JFR shows the framework's waits alongside the JVM's own activity.
+ * <p>
+ * Finds of locators that aren't optional (see
+ * {@link LocatorRegistry#isOptional(By)}) are also reported to
+ * {@link SiteHealthMonitor}, as a failure if they waited out their timeout.
+ */
+public class WaitDiagnostics {
+
+	private static final Map<String, LocatorStats> STATS = new ConcurrentHashMap<String, LocatorStats>();
+
+	/**
+	 * Timing totals for one locator
+	 */
+	static class LocatorStats {
+		final String locator;
+		String name;
+		long calls;
+		long hits;
+		long successMilliseconds;
+		long missMilliseconds;
+
+		LocatorStats(String locator) {
+			this.locator = locator;
+		}
+	}
+
+	/**
+	 * Times one find, for {@link WaitDiagnostics} and as a Java Flight Recorder
+	 * {@link WaitEvent}
+	 */
+	public static class WaitTimer {
+		private final By locator;
+		private final int timeoutMilliseconds;
+		private final long startTime = System.currentTimeMillis();
+		private final WaitEvent event = new WaitEvent();
+
+		WaitTimer(By locator, int timeoutMilliseconds) {
+			this.locator = locator;
+			this.timeoutMilliseconds = timeoutMilliseconds;
+			event.timeout = timeoutMilliseconds;
+			event.begin();
+		}
+
+		/**
+		 * Ends the timing and records the outcome.
+		 *
+		 * @param found whether anything was found
+		 */
+		public void finish(boolean found) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.locator = locator.toString();
+				event.found = found;
+				event.commit();
+			}
+
+			long elapsedMilliseconds = System.currentTimeMillis() - startTime;
+			record(locator, elapsedMilliseconds, found);
+
+			// misses that return early (past the end of a range, for example) aren't
+			// a sign of the site being slow or down
+			boolean timedOut = !found && elapsedMilliseconds >= timeoutMilliseconds;
+			if ((found || timedOut) && !LocatorRegistry.isOptional(locator)) {
+				SiteHealthMonitor.record(found, "find " + locator);
+			}
+		}
+	}
+
+	/**
+	 * Starts timing a find. Call {@link WaitTimer#finish(boolean)} when it is done.
+	 *
+	 * @throws SiteDegradedException if {@link SiteHealthMonitor} has found the site
+	 *                               degraded, so the find fails without waiting
+	 *
+	 * @param locator             the locator used for the find
+	 * @param timeoutMilliseconds the find's timeout
+	 * @return the timer
+	 */
+	public static WaitTimer start(By locator, int timeoutMilliseconds) {
+		SiteHealthMonitor.checkCircuit();
+		return new WaitTimer(locator, timeoutMilliseconds);
+	}
+
+	/**
+	 * Records the outcome of one find.
+	 *
+	 * @param locator             the locator used for the find
+	 * @param elapsedMilliseconds time spent on the find
+	 * @param found               whether anything was found
+	 */
+	public static void record(By locator, long elapsedMilliseconds, boolean found) {
+		String key = locator.toString();
+		LocatorStats stats = STATS.get(key);
+		if (stats == null) {
+			LocatorStats newStats = new LocatorStats(key);
+			newStats.name = LocatorRegistry.findName(locator);
+			STATS.putIfAbsent(key, newStats);
+			stats = STATS.get(key);
+		}
+
+		synchronized (stats) {
+			stats.calls++;
+			if (found) {
+				stats.hits++;
+				stats.successMilliseconds += elapsedMilliseconds;
+			} else {
+				stats.missMilliseconds += elapsedMilliseconds;
+			}
+		}
+	}
+
+	/**
+	 * Builds the report, one line per locator, sorted by the time lost to misses
+	 * (most first).
+	 *
+	 * @return the report text
+	 */
+	public static String report() {
+		List<LocatorStats> snapshot = new ArrayList<LocatorStats>();
+		for (LocatorStats stats : STATS.values()) {
+			LocatorStats copy = new LocatorStats(stats.locator);
+			copy.name = stats.name;
+			synchronized (stats) {
+				copy.calls = stats.calls;
+				copy.hits = stats.hits;
+				copy.successMilliseconds = stats.successMilliseconds;
+				copy.missMilliseconds = stats.missMilliseconds;
+			}
+			snapshot.add(copy);
+		}
+
+		Collections.sort(snapshot, new Comparator<LocatorStats>() {
+			public int compare(LocatorStats a, LocatorStats b) {
+				return Long.compare(b.missMilliseconds, a.missMilliseconds);
+			}
+		});
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-12s %6s %6s %6s %14s %14s  %s%n", "wasted ms", "calls", "hits", "hit %",
+				"avg success ms", "total ms", "locator"));
+		for (LocatorStats stats : snapshot) {
+			String name = stats.name != null ? stats.name : stats.locator;
+			report.append(String.format("%-12d %6d %6d %6.1f %14d %14d  %s%n", stats.missMilliseconds, stats.calls,
+					stats.hits, stats.calls == 0 ? 0.0 : 100.0 * stats.hits / stats.calls,
+					stats.hits == 0 ? 0 : stats.successMilliseconds / stats.hits,
+					stats.successMilliseconds + stats.missMilliseconds, name));
+		}
+
+		return report.toString();
+	}
+
+	/**
+	 * Clears all collected timing.
+	 */
+	public static void reset() {
+		STATS.clear();
+	}
+}
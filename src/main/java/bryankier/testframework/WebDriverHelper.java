@@ -4,11 +4,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.remote.RemoteWebElement;
+import org.openqa.selenium.internal.WrapsDriver;
 import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.FluentWait;
@@ -17,6 +19,38 @@ import com.google.common.base.Function;
 
 public class WebDriverHelper {
 
+	/**
+	 * Wraps a condition so that a find already waiting on it fails with
+	 * {@link SiteDegradedException} as soon as {@link SiteHealthMonitor} finds the
+	 * site degraded, instead of waiting out its timeout.
+	 */
+	private static <T> ExpectedCondition<T> failFastIfSiteDegraded(ExpectedCondition<T> expectedCondition) {
+		return new ExpectedCondition<T>() {
+			public T apply(WebDriver driver) {
+				SiteHealthMonitor.checkCircuit();
+				return expectedCondition.apply(driver);
+			}
+		};
+	}
+
+	/**
+	 * Navigates to a URL, reporting the outcome to {@link SiteHealthMonitor}.
+	 * 
+	 * @param driver the automation web driver
+	 * @param url    the URL to load
+	 * @throws SiteDegradedException if the site has been found degraded
+	 */
+	public static void navigate(WebDriver driver, String url) {
+		SiteHealthMonitor.checkCircuit();
+		try {
+			driver.get(url);
+		} catch (WebDriverException e) {
+			SiteHealthMonitor.record(false, "navigate to " + url);
+			throw e;
+		}
+		SiteHealthMonitor.record(true, "navigate to " + url);
+	}
+
 	/**
 	 * Finds an element matching the expected condition using the web driver.
 	 * <p>
@@ -25,25 +59,30 @@ public class WebDriverHelper {
 	 * it can be made public.
 	 * 
 	 * @param expectedCondition    the condition to use to try to find the element
+	 * @param locator              the locator used by the condition, to record
+	 *                             the find's timing in {@link WaitDiagnostics}
 	 * @param driver               the automation web driver
 	 * @param timeoutMilliseconds  the maximum time to spend looking for the element
 	 * @param intervalMilliseconds the polling interval to wait between calls to the
 	 *                             driver to try the find again
 	 * @return the web element that was found, or null if it wasn't found
 	 */
-	private static WebElement findElement(ExpectedCondition<WebElement> expectedCondition, WebDriver driver,
-			int timeoutMilliseconds, int intervalMilliseconds) {
+	private static WebElement findElement(ExpectedCondition<WebElement> expectedCondition, By locator,
+			WebDriver driver, int timeoutMilliseconds, int intervalMilliseconds) {
+		WaitDiagnostics.WaitTimer waitTimer = WaitDiagnostics.start(locator, timeoutMilliseconds);
 		FluentWait<WebDriver> wait = new FluentWait<WebDriver>(driver)
 				.withTimeout(timeoutMilliseconds, TimeUnit.MILLISECONDS).ignoring(NoSuchElementException.class);
 
 		WebElement element = null;
 
 		try {
-			element = wait.until(expectedCondition);
+			element = wait.until(failFastIfSiteDegraded(expectedCondition));
 		} catch (WebDriverException e) {
 			// let the caller handle if element is not found (null), so execution
 			// can continue and results can be reported in desired format.
 			element = null;
+		} finally {
+			waitTimer.finish(element != null);
 		}
 
 		return element;
@@ -61,11 +100,42 @@ public class WebDriverHelper {
 	 */
 	public static WebElement findVisibleElement(By locator, WebDriver driver, int timeoutMilliseconds,
 			int intervalMilliseconds) {
-		return findElement(ExpectedConditions.visibilityOfElementLocated(locator), driver, timeoutMilliseconds,
-				intervalMilliseconds);
+		return findElement(ExpectedConditions.visibilityOfElementLocated(locator), locator, driver,
+				timeoutMilliseconds, intervalMilliseconds);
 
 	}
 
+	/**
+	 * Finds the first visible element of all those matching the locator, unlike
+	 * {@link #findVisibleElement(By, WebDriver, int, int)}, which only waits for
+	 * the first match to become visible. Use this when hidden matches may come
+	 * before the one wanted, like hidden modal shells before an open dialog.
+	 * 
+	 * @param locator              the locator to use to try to find the element
+	 * @param driver               the automation web driver
+	 * @param timeoutMilliseconds  the maximum time to spend looking for the element
+	 * @param intervalMilliseconds the polling interval to wait between calls to the
+	 *                             driver to try the find again
+	 * @return the web element that was found, or null if it wasn't found
+	 */
+	public static WebElement findAnyVisibleElement(By locator, WebDriver driver, int timeoutMilliseconds,
+			int intervalMilliseconds) {
+		return findElement(new ExpectedCondition<WebElement>() {
+			public WebElement apply(WebDriver driver) {
+				for (WebElement element : driver.findElements(locator)) {
+					try {
+						if (element.isDisplayed()) {
+							return element;
+						}
+					} catch (StaleElementReferenceException e) {
+						// removed since it was found, so not the one wanted
+					}
+				}
+				return null;
+			}
+		}, locator, driver, timeoutMilliseconds, intervalMilliseconds);
+	}
+
 	/**
 	 * Finds a visible element using the locator, within the passed in parent
 	 * element, with the web driver.
@@ -85,7 +155,8 @@ public class WebDriverHelper {
 					+ "' must start with a period, because this method is intended to search for child elements.");
 		}
 
-		FluentWait<WebDriver> wait = new FluentWait<WebDriver>(((RemoteWebElement) parentElement).getWrappedDriver())
+		WaitDiagnostics.WaitTimer waitTimer = WaitDiagnostics.start(locator, timeoutMilliseconds);
+		FluentWait<WebDriver> wait = new FluentWait<WebDriver>(((WrapsDriver) parentElement).getWrappedDriver())
 				.withTimeout(timeoutMilliseconds, TimeUnit.MILLISECONDS).ignoring(NoSuchElementException.class);
 
 		WebElement element = null;
@@ -93,12 +164,15 @@ public class WebDriverHelper {
 		try {
 			element = wait.until(new Function<WebDriver, WebElement>() {
 				public WebElement apply(WebDriver driver) {
+					SiteHealthMonitor.checkCircuit();
 					return parentElement.findElement(locator);
 				}
 			});
 		} catch (WebDriverException e) {
 			// let the caller handle if element is not found (null), so execution
 			// can continue and results can be reported in desired format.
+		} finally {
+			waitTimer.finish(element != null);
 		}
 
 		return element;
@@ -120,8 +194,8 @@ public class WebDriverHelper {
 	public static WebElement findClickableElement(By locator, WebDriver driver, int timeoutMilliseconds,
 			int intervalMilliseconds) {
 
-		return findElement(ExpectedConditions.elementToBeClickable(locator), driver, timeoutMilliseconds,
-				intervalMilliseconds);
+		return findElement(ExpectedConditions.elementToBeClickable(locator), locator, driver,
+				timeoutMilliseconds, intervalMilliseconds);
 	}
 
 	/**
@@ -132,6 +206,8 @@ public class WebDriverHelper {
 	 * it can be made public.
 	 * 
 	 * @param expectedCondition    the condition to use to try to find the elements
+	 * @param locator              the locator used by the condition, to record
+	 *                             the find's timing in {@link WaitDiagnostics}
 	 * @param driver               the automation web driver
 	 * @param timeoutMilliseconds  the maximum time to spend looking for the
 	 *                             elements
@@ -140,18 +216,21 @@ public class WebDriverHelper {
 	 * @return the list of web element that were found, or an empty list
 	 */
 	private static List<WebElement> findElements(ExpectedCondition<List<WebElement>> expectedCondition,
-			WebDriver driver, int timeoutMilliseconds, int intervalMilliseconds) {
+			By locator, WebDriver driver, int timeoutMilliseconds, int intervalMilliseconds) {
+		WaitDiagnostics.WaitTimer waitTimer = WaitDiagnostics.start(locator, timeoutMilliseconds);
 		FluentWait<WebDriver> wait = new FluentWait<WebDriver>(driver)
 				.withTimeout(timeoutMilliseconds, TimeUnit.MILLISECONDS).ignoring(NoSuchElementException.class);
 
 		List<WebElement> elements = null;
 
 		try {
-			elements = wait.until(expectedCondition);
+			elements = wait.until(failFastIfSiteDegraded(expectedCondition));
 		} catch (WebDriverException e) {
 			// let the caller handle if no elements are found, so execution
 			// can continue and results can be reported in desired format.
 			elements = new ArrayList<WebElement>();
+		} finally {
+			waitTimer.finish(elements != null && !elements.isEmpty());
 		}
 
 		return elements;
@@ -177,8 +256,156 @@ public class WebDriverHelper {
 		// driver.FindElements runs full timeout if called too quickly, but is less than
 		// a second if called slightly delayed.
 
-		return findElements(ExpectedConditions.visibilityOfAllElementsLocatedBy(locator), driver, timeoutMilliseconds,
-				intervalMilliseconds);
+		return findElements(ExpectedConditions.visibilityOfAllElementsLocatedBy(locator), locator, driver,
+				timeoutMilliseconds, intervalMilliseconds);
+	}
+
+	/**
+	 * Finds a window of visible elements matching the locator, starting at the
+	 * given index in document order, without retrieving every match on the page.
+	 * <p>
+	 * Only the elements in the requested window are returned to the test and
+	 * checked for visibility on each poll, so memory and time per call stay
+	 * bounded on very large pages ("view all" listings, etc.). Id, CSS, XPath,
+	 * name, class name and tag name locators are sliced in the browser. Other
+	 * locator types fall back to finding all matches and taking the sub-list.
+	 * <p>
+	 * A window starting past the end of the matches returns an empty list as soon
+	 * as it is checked, rather than waiting for the timeout, so the first window
+	 * (fromIndex 0) should be retrieved before later ones to make sure the page
+	 * has loaded.
+	 * 
+	 * @param locator              the locator to use to try to find the elements
+	 * @param driver               the automation web driver to use to find the
+	 *                             elements
+	 * @param fromIndex            index of the first matching element to return
+	 * @param maxCount             maximum number of elements to return
+	 * @param timeoutMilliseconds  the maximum time to spend looking for the
+	 *                             elements
+	 * @param intervalMilliseconds the polling interval to wait between calls to the
+	 *                             driver to try the find again
+	 * @return the web elements in the window that were found, or an empty list
+	 */
+	public static List<WebElement> findVisibleElementsInRange(By locator, WebDriver driver, int fromIndex,
+			int maxCount, int timeoutMilliseconds, int intervalMilliseconds) {
+		WaitDiagnostics.WaitTimer waitTimer = WaitDiagnostics.start(locator, timeoutMilliseconds);
+		FluentWait<WebDriver> wait = new FluentWait<WebDriver>(driver)
+				.withTimeout(timeoutMilliseconds, TimeUnit.MILLISECONDS)
+				.pollingEvery(intervalMilliseconds, TimeUnit.MILLISECONDS).ignoring(NoSuchElementException.class);
+
+		List<WebElement> elements = null;
+
+		try {
+			elements = wait.until(new Function<WebDriver, List<WebElement>>() {
+				public List<WebElement> apply(WebDriver driver) {
+					SiteHealthMonitor.checkCircuit();
+					List<WebElement> window = findElementsInRange(locator, driver, fromIndex, maxCount);
+
+					if (window.isEmpty()) {
+						// nothing loaded yet for the first window, otherwise past the end
+						return fromIndex == 0 ? null : window;
+					}
+
+					for (WebElement we : window) {
+						if (!we.isDisplayed()) {
+							return null;
+						}
+					}
+
+					return window;
+				}
+			});
+		} catch (WebDriverException e) {
+			// let the caller handle if no elements are found, so execution
+			// can continue and results can be reported in desired format.
+			elements = new ArrayList<WebElement>();
+		} finally {
+			waitTimer.finish(elements != null && !elements.isEmpty());
+		}
+
+		return elements;
+	}
+
+	/**
+	 * Gets the elements matching the locator in the given index range, without
+	 * waiting. Where the locator can be evaluated in the browser, only the
+	 * elements in the range are sent back to the driver.
+	 * 
+	 * @param locator   the locator to use to find the elements
+	 * @param driver    the automation web driver
+	 * @param fromIndex index of the first matching element to return
+	 * @param maxCount  maximum number of elements to return
+	 * @return the matching elements in the range, or an empty list
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<WebElement> findElementsInRange(By locator, WebDriver driver, int fromIndex, int maxCount) {
+		String[] script = toBrowserSelector(locator);
+
+		if (script == null || !(driver instanceof JavascriptExecutor)) {
+			List<WebElement> all = driver.findElements(locator);
+			int toIndex = Math.min(all.size(), fromIndex + maxCount);
+			return fromIndex >= toIndex ? new ArrayList<WebElement>()
+					: new ArrayList<WebElement>(all.subList(fromIndex, toIndex));
+		}
+
+		Object result = ((JavascriptExecutor) driver).executeScript(RANGE_SCRIPT, script[0], script[1], fromIndex,
+				fromIndex + maxCount);
+
+		return result == null ? new ArrayList<WebElement>() : (List<WebElement>) result;
+	}
+
+	/**
+	 * Returns the elements matching a selector (arguments[0] is "css" or "xpath",
+	 * arguments[1] is the selector) from index arguments[2] up to, but not
+	 * including, index arguments[3].
+	 */
+	private static final String RANGE_SCRIPT = "var kind = arguments[0], sel = arguments[1];"
+			+ "var from = arguments[2], to = arguments[3], out = [];"
+			+ "if (kind === 'xpath') {"
+			+ "  var snap = document.evaluate(sel, document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);"
+			+ "  for (var i = from; i < Math.min(to, snap.snapshotLength); i++) { out.push(snap.snapshotItem(i)); }"
+			+ "} else {"
+			+ "  var nodes = document.querySelectorAll(sel);"
+			+ "  for (var i = from; i < Math.min(to, nodes.length); i++) { out.push(nodes[i]); }"
+			+ "}"
+			+ "return out;";
+
+	/**
+	 * Converts a locator to a selector the browser can evaluate directly.
+	 * <p>
+	 * Like the child element check in
+	 * {@link #findVisibleElement(By, WebElement, int, int)}, this relies on the
+	 * locator's string form, "By.[type]: [value]".
+	 * 
+	 * @param locator the locator to convert
+	 * @return a two item array of the selector kind ("css" or "xpath") and the
+	 *         selector, or null if the locator type can't be converted
+	 */
+	static String[] toBrowserSelector(By locator) {
+		String locatorString = locator.toString();
+		int separator = locatorString.indexOf(": ");
+		if (separator < 0) {
+			return null;
+		}
+
+		String type = locatorString.substring(0, separator);
+		String value = locatorString.substring(separator + 2);
+
+		switch (type) {
+		case "By.id":
+			return new String[] { "css", "[id='" + value + "']" };
+		case "By.name":
+			return new String[] { "css", "[name='" + value + "']" };
+		case "By.className":
+			return new String[] { "css", "." + value };
+		case "By.tagName":
+		case "By.cssSelector":
+			return new String[] { "css", value };
+		case "By.xpath":
+			return new String[] { "xpath", value };
+		default:
+			return null;
+		}
 	}
 
 	/**
@@ -217,6 +444,8 @@ public class WebDriverHelper {
 				elapsedTime = System.currentTimeMillis() - startTime;
 
 				TimeUnit.MILLISECONDS.sleep(intervalMilliseconds);
+			} catch (SiteDegradedException e) {
+				throw e;
 			} catch (Exception e) {
 
 			}
@@ -225,6 +454,31 @@ public class WebDriverHelper {
 		return enabledElements;
 	}
 
+	/**
+	 * Clears the browser session's state for the current site without going
+	 * through the UI: deletes all cookies, and clears local and session storage.
+	 * Server-side state tied to the session (such as a shopping cart) is dropped
+	 * with the session cookie.
+	 * 
+	 * @param driver the automation web driver, which should be on a page of the
+	 *               site whose state is being cleared
+	 * @return true if the cookies and storage were cleared without an error. This
+	 *         doesn't check the server-side state; reload a page and check it
+	 *         there.
+	 */
+	public static boolean clearSessionState(WebDriver driver) {
+		try {
+			driver.manage().deleteAllCookies();
+			if (driver instanceof JavascriptExecutor) {
+				((JavascriptExecutor) driver)
+						.executeScript("window.localStorage.clear(); window.sessionStorage.clear();");
+			}
+			return true;
+		} catch (WebDriverException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * Counts elements matching the expected condition using the web driver.
 	 * <p>
@@ -233,6 +487,7 @@ public class WebDriverHelper {
 	 * it can be made public.
 	 * 
 	 * @param expectedCondition    the condition to use to try to find the elements
+	 * @param locator              the locator used by the condition
 	 * @param driver               the automation web driver
 	 * @param timeoutMilliseconds  the maximum time to spend looking for the
 	 *                             elements
@@ -240,9 +495,10 @@ public class WebDriverHelper {
 	 *                             driver to try the find again
 	 * @return the number of matching elements that were found
 	 */
-	private static int countElements(ExpectedCondition<List<WebElement>> expectedCondition, WebDriver driver,
-			int timeoutMilliseconds, int intervalMilliseconds) {
-		List<WebElement> elements = findElements(expectedCondition, driver, timeoutMilliseconds, intervalMilliseconds);
+	private static int countElements(ExpectedCondition<List<WebElement>> expectedCondition, By locator,
+			WebDriver driver, int timeoutMilliseconds, int intervalMilliseconds) {
+		List<WebElement> elements = findElements(expectedCondition, locator, driver, timeoutMilliseconds,
+				intervalMilliseconds);
 
 		return elements.size();
 	}
@@ -260,7 +516,7 @@ public class WebDriverHelper {
 	 */
 	public static int countElements(By locator, WebDriver driver, int timeoutMilliseconds, int intervalMilliseconds) {
 
-		return countElements(ExpectedConditions.presenceOfAllElementsLocatedBy(locator), driver, timeoutMilliseconds,
-				intervalMilliseconds);
+		return countElements(ExpectedConditions.presenceOfAllElementsLocatedBy(locator), locator, driver,
+				timeoutMilliseconds, intervalMilliseconds);
 	}
 }
@@ -0,0 +1,26 @@
+package bryankier.testframework.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for creating a web driver (and starting its
+ * browser) in {@link bryankier.testframework.DriverFactory}.
+ */
+@Name("bryankier.testframework.DriverCreation")
+@Label("Driver Creation")
+@Category({ "Test Framework", "WebDriver" })
+@Description("Creating a web driver and starting its browser")
+public class DriverCreationEvent extends jdk.jfr.Event {
+
+	@Label("Browser")
+	public String browser;
+
+	@Label("Headless")
+	public boolean headless;
+
+	@Label("Succeeded")
+	public boolean succeeded;
+}
@@ -0,0 +1,27 @@
+package bryankier.testframework.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for one step of a test. The event's duration is
+ * the time spent on the step.
+ */
+@Name("bryankier.testframework.TestStep")
+@Label("Test Step")
+@Category({ "Test Framework" })
+@Description("A step of a test, from its description being set to the next step starting")
+public class TestStepEvent extends jdk.jfr.Event {
+
+	@Label("Test")
+	public String test;
+
+	@Label("Step")
+	public String step;
+
+	@Label("Passed")
+	@Description("False if an assertion failed or an exception was thrown during the step")
+	public boolean passed;
+}
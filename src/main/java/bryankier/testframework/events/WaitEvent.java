@@ -0,0 +1,29 @@
+package bryankier.testframework.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event for one wait to find elements in
+ * {@link bryankier.testframework.WebDriverHelper}. The event's duration is the
+ * actual time spent waiting.
+ */
+@Name("bryankier.testframework.Wait")
+@Label("WebDriver Wait")
+@Category({ "Test Framework", "WebDriver" })
+@Description("A wait for elements matching a locator")
+public class WaitEvent extends jdk.jfr.Event {
+
+	@Label("Locator")
+	public String locator;
+
+	@Label("Timeout")
+	@Timespan(Timespan.MILLISECONDS)
+	public long timeout;
+
+	@Label("Found")
+	public boolean found;
+}
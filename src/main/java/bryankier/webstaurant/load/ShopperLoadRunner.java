@@ -0,0 +1,300 @@
+package bryankier.webstaurant.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import bryankier.testframework.DriverFactory;
+import bryankier.testframework.SiteDegradedException;
+import bryankier.testframework.SiteHealthMonitor;
+import bryankier.testframework.StepLatencyStats;
+import bryankier.testframework.TabScheduler;
+import bryankier.webstaurant.pom.AccessoriesDialog;
+import bryankier.webstaurant.pom.CartPage;
+import bryankier.webstaurant.pom.StoreHomePage;
+
+/**
+ * Runs the search, add-to-cart and empty-cart journey modeled by the page
+ * objects as a number of concurrent headless virtual shoppers, for capacity
+ * testing against a configurable environment.
+ * <p>
+ * Options are read from system properties:
+ * <ul>
+ * <li>load.environment - test environment, required. No stand-in store is
+ * provided; "local" runs against one you provide at the store.localUrl system
+ * property (default http://localhost:8080). "prod" puts the load on the live
+ * store.</li>
+ * <li>load.browser - browser name (default "chrome")</li>
+ * <li>load.shoppers - number of concurrent virtual shoppers (default 5)</li>
+ * <li>load.rampUpSeconds - time over which shoppers are started, evenly spaced
+ * (default 30)</li>
+ * <li>load.journeysPerMinute - target rate of journey starts across all
+ * shoppers, or 0 to run as fast as possible (default 0)</li>
+ * <li>load.durationSeconds - time to keep starting journeys after the first
+ * shopper starts (default 300)</li>
+ * <li>load.searchText - text to search for (default "stainless work table")</li>
+ * <li>load.tabsPerBrowser - number of shoppers sharing each browser, each in its
+ * own tab (default 1). Tabs share the browser's cart, so with more than one the
+ * journey stops after the search step.</li>
+ * <li>load.circuitBreaker - if true, use {@link SiteHealthMonitor} (default
+ * false). By default shoppers keep up the load however the site responds, so
+ * the point where it degrades shows in the results.</li>
+ * <li>health.maxWaitMs - with the circuit breaker, the maximum time a shopper
+ * waits for the site to recover before each journey, once it has been found
+ * degraded (default 120000)</li>
+ * </ul>
+ * Throughput and latency percentiles per journey step are printed at the end.
+ * With the circuit breaker, shoppers wait for a degraded site to recover
+ * before starting journeys, and journeys cut short by it are recorded as "site
+ * degraded" and "degraded journey" instead of under their steps.
+ */
+public class ShopperLoadRunner {
+
+	private final String environment = System.getProperty("load.environment");
+	private final String browser = System.getProperty("load.browser", "chrome");
+	private final int shoppers = Integer.getInteger("load.shoppers", 5);
+	private final int rampUpSeconds = Integer.getInteger("load.rampUpSeconds", 30);
+	private final int journeysPerMinute = Integer.getInteger("load.journeysPerMinute", 0);
+	private final int durationSeconds = Integer.getInteger("load.durationSeconds", 300);
+	private final String searchText = System.getProperty("load.searchText", "stainless work table");
+	private final int tabsPerBrowser = Math.max(1, Integer.getInteger("load.tabsPerBrowser", 1));
+	private final boolean circuitBreaker = Boolean.getBoolean("load.circuitBreaker");
+	private final long recoveryMaxWaitMilliseconds = Long.getLong("health.maxWaitMs", 120000);
+
+	private final StepLatencyStats stats = new StepLatencyStats();
+	private long endTime;
+
+	/** Earliest time (System.nanoTime) the next journey may start at the target rate */
+	private long nextJourneyStart = System.nanoTime();
+
+	public static void main(String[] args) throws InterruptedException {
+		ShopperLoadRunner runner = new ShopperLoadRunner();
+		String policyWarning = AccessoriesDialog.findPolicyWarning();
+		if (policyWarning != null) {
+			System.out.println("Warning: " + policyWarning);
+		}
+		boolean finished = runner.run();
+		System.out.println(runner.stats.report());
+		if (!finished) {
+			System.out.println("Warning: Some shoppers didn't finish in time and were stopped, so their last"
+					+ " journeys are missing from the results.");
+		}
+	}
+
+	/**
+	 * Starts the virtual shoppers' browsers over the ramp-up period and waits for
+	 * them to finish. Shoppers still running well after the duration is over are
+	 * interrupted, and their browsers closed, before this returns.
+	 *
+	 * @return true if every shopper finished on its own
+	 * @throws IllegalArgumentException if load.environment isn't set
+	 */
+	public boolean run() throws InterruptedException {
+		if (environment == null || environment.trim().isEmpty()) {
+			throw new IllegalArgumentException(
+					"Set the load.environment system property to the environment to put the load on.");
+		}
+		SiteHealthMonitor.setEnabled(circuitBreaker);
+
+		endTime = System.currentTimeMillis() + durationSeconds * 1000L;
+		final int browsers = (shoppers + tabsPerBrowser - 1) / tabsPerBrowser;
+		ExecutorService pool = Executors.newFixedThreadPool(browsers);
+
+		for (int i = 0; i < browsers; i++) {
+			final long startDelayMilliseconds = browsers <= 1 ? 0 : rampUpSeconds * 1000L * i / (browsers - 1);
+			final int shoppersInBrowser = Math.min(tabsPerBrowser, shoppers - i * tabsPerBrowser);
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						TimeUnit.MILLISECONDS.sleep(startDelayMilliseconds);
+						runBrowser(shoppersInBrowser);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+
+		pool.shutdown();
+		if (pool.awaitTermination(durationSeconds + rampUpSeconds + 600, TimeUnit.SECONDS)) {
+			return true;
+		}
+
+		// interrupting the shoppers ends their journeys and quits their browsers
+		pool.shutdownNow();
+		pool.awaitTermination(60, TimeUnit.SECONDS);
+		return false;
+	}
+
+	/**
+	 * Runs shoppers in one browser until the duration is over, in their own tabs
+	 * if there is more than one.
+	 */
+	private void runBrowser(int shoppersInBrowser) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		WebDriver driver = null;
+		try {
+			driver = DriverFactory.createDriver(browser, false, true);
+			stats.record("open browser", System.currentTimeMillis() - start, true);
+		} catch (Exception e) {
+			stats.record("open browser", System.currentTimeMillis() - start, false);
+			return;
+		}
+
+		try {
+			if (shoppersInBrowser <= 1) {
+				runShopper(driver, true);
+				return;
+			}
+
+			List<TabScheduler.TabScenario> tabShoppers = new ArrayList<TabScheduler.TabScenario>();
+			for (int i = 0; i < shoppersInBrowser; i++) {
+				tabShoppers.add(new TabScheduler.TabScenario() {
+					public void run(WebDriver tabDriver) throws InterruptedException {
+						runShopper(tabDriver, false);
+					}
+				});
+			}
+			// a shopper still running at the timeout is stopped before the browser quits
+			long tabsStart = System.currentTimeMillis();
+			for (Throwable error : new TabScheduler(driver).run(tabShoppers, durationSeconds + 600)) {
+				if (error instanceof TimeoutException) {
+					stats.record("finish tab shopper", System.currentTimeMillis() - tabsStart, false);
+				}
+			}
+		} finally {
+			driver.quit();
+		}
+	}
+
+	/**
+	 * Runs journeys with one browser (or tab) until the duration is over.
+	 */
+	private void runShopper(WebDriver driver, boolean includeCart) throws InterruptedException {
+		String probeUrl = StoreHomePage.getHealthProbeUrl(environment);
+		while (System.currentTimeMillis() < endTime && !Thread.currentThread().isInterrupted()) {
+			long start = System.currentTimeMillis();
+			try {
+				if (circuitBreaker) {
+					SiteHealthMonitor.awaitHealthy(probeUrl, recoveryMaxWaitMilliseconds);
+				}
+			} catch (SiteDegradedException e) {
+				stats.record("site degraded", System.currentTimeMillis() - start, false);
+				continue;
+			}
+
+			waitForJourneySlot();
+			runJourney(driver, includeCart);
+		}
+	}
+
+	/**
+	 * Spaces journey starts across all shoppers to keep to the target rate.
+	 */
+	private void waitForJourneySlot() throws InterruptedException {
+		if (journeysPerMinute <= 0) {
+			return;
+		}
+
+		long waitNanos;
+		synchronized (this) {
+			long now = System.nanoTime();
+			long start = Math.max(now, nextJourneyStart);
+			nextJourneyStart = start + TimeUnit.MINUTES.toNanos(1) / journeysPerMinute;
+			waitNanos = start - now;
+		}
+
+		TimeUnit.NANOSECONDS.sleep(waitNanos);
+	}
+
+	/**
+	 * Runs one journey, recording each step. Stops at the first failed step, or
+	 * after the search if the cart steps aren't included. A journey cut short
+	 * because the site was found degraded is recorded as a degraded journey.
+	 */
+	private void runJourney(WebDriver driver, boolean includeCart) {
+		long journeyStart = System.currentTimeMillis();
+		try {
+			boolean success = runJourneySteps(driver, includeCart);
+			stats.record("journey", System.currentTimeMillis() - journeyStart, success);
+		} catch (SiteDegradedException e) {
+			stats.record("degraded journey", System.currentTimeMillis() - journeyStart, false);
+		}
+	}
+
+	/**
+	 * @return true if every step in the journey succeeded
+	 * @throws SiteDegradedException if a step was cut short because the site was
+	 *                               found degraded
+	 */
+	private boolean runJourneySteps(WebDriver driver, boolean includeCart) {
+		StoreHomePage homePage = new StoreHomePage(driver, environment);
+
+		boolean success = step("home page", new Step() {
+			public boolean run() {
+				homePage.go();
+				return true;
+			}
+		});
+
+		success = success && step("search", new Step() {
+			public boolean run() {
+				homePage.searchProducts(searchText);
+				return !homePage.findResultItemBoxes(0, 1).isEmpty();
+			}
+		});
+
+		success = success && (!includeCart || step("add to cart", new Step() {
+			public boolean run() {
+				List<WebElement> firstResult = homePage.findResultItemBoxes(0, 1);
+				boolean added = homePage.addItemInBoxToCart(firstResult.get(0), true);
+				homePage.tryClickAddedToYourCartCloseButton();
+				return added;
+			}
+		}));
+
+		success = success && (!includeCart || step("empty cart", new Step() {
+			public boolean run() {
+				homePage.clickIntoCart();
+				return new CartPage(driver).emptyCart();
+			}
+		}));
+
+		return success;
+	}
+
+	/**
+	 * One timed step of the journey
+	 */
+	private interface Step {
+		boolean run();
+	}
+
+	/**
+	 * Runs and records a step. A step cut short because the site was found
+	 * degraded is recorded as "site degraded" rather than under its name.
+	 *
+	 * @throws SiteDegradedException if the site was found degraded
+	 */
+	private boolean step(String name, Step step) {
+		long start = System.currentTimeMillis();
+		boolean success;
+		try {
+			success = step.run();
+		} catch (SiteDegradedException e) {
+			stats.record("site degraded", System.currentTimeMillis() - start, false);
+			throw e;
+		} catch (Exception e) {
+			success = false;
+		}
+		stats.record(name, System.currentTimeMillis() - start, success);
+
+		return success;
+	}
+}
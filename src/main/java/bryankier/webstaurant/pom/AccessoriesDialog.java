@@ -0,0 +1,248 @@
+package bryankier.webstaurant.pom;
+
+import java.util.List;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import bryankier.testframework.LocatorRegistry;
+import bryankier.testframework.WebDriverHelper;
+
+/**
+ * The dialog that may appear when adding an item with optional accessories to
+ * the cart, with a dropdown per accessory and its own Add To Cart button.
+ * <p>
+ * Which option is chosen in each dropdown is set by a {@link SelectionPolicy},
+ * by default read from the accessories.policy system property ("first",
+ * "cheapest" or "sku", default "first") and, for the SKU policy, the
+ * accessories.sku system property. A policy name that isn't valid falls back
+ * to "first" (see {@link #findPolicyWarning()}).
+ * <p>
+ * Other modal dialogs (consent or newsletter prompts, for example) use the same
+ * dialog markup, so the dialog is only taken to be this one if it contains an
+ * accessory dropdown.
+ */
+public class AccessoriesDialog {
+
+	/* Page name the locators are registered under, see LocatorRegistry */
+	static final String ACCESSORIES_DIALOG = "accessories";
+
+	static final By DIALOG_LOCATOR = LocatorRegistry.register(ACCESSORIES_DIALOG, "DIALOG_LOCATOR",
+			By.xpath("//div[@role='dialog'][@aria-modal='true'][.//select[@name='accessories']]"), true);
+	static final By ACCESSORY_DROPDOWN_LOCATOR = LocatorRegistry.register(ACCESSORIES_DIALOG,
+			"ACCESSORY_DROPDOWN_LOCATOR",
+			By.cssSelector("div[role='dialog'][aria-modal='true'] select[name='accessories']"), true);
+	static final By ADD_TO_CART_BUTTON_LOCATOR = LocatorRegistry.register(ACCESSORIES_DIALOG,
+			"ADD_TO_CART_BUTTON_LOCATOR", By.xpath("//div[@role='dialog'][@aria-modal='true']"
+					+ "[.//select[@name='accessories']]//button[text()='Add To Cart']"),
+			true);
+	/**
+	 * Matches either an accessory dropdown in the dialog or the "added to your
+	 * cart" notification, whichever appears after clicking an item's Add to Cart
+	 * button, so the dialog's absence is known as soon as the item is added.
+	 */
+	static final By DIALOG_OR_ADDED_TO_CART_LOCATOR = LocatorRegistry.register(ACCESSORIES_DIALOG,
+			"DIALOG_OR_ADDED_TO_CART_LOCATOR", By.cssSelector("div[role='dialog'][aria-modal='true']"
+					+ " select[name='accessories'], div[class='notification__content']"),
+			false);
+
+	/**
+	 * Chooses an option in every accessory dropdown in the dialog and clicks the
+	 * dialog's Add To Cart button, in one call. arguments[0] is the policy
+	 * ("first", "cheapest" or "sku") and arguments[1] the SKU for the SKU policy.
+	 * Placeholder (empty value) and disabled options are never chosen. Prices are
+	 * read from the first $n.nn in an option's text, and a SKU matches an option's
+	 * value or text; a dropdown without a match falls back to the first available
+	 * option. Keep the selectors in line with the locators above.
+	 * <p>
+	 * Returns the number of dropdowns set, or -1 if the dialog or its button
+	 * wasn't found. Uses plain loops over NodeLists rather than NodeList.forEach,
+	 * which older browser engines don't have.
+	 */
+	static final String SELECT_AND_CONFIRM_SCRIPT = "var policy = arguments[0], sku = arguments[1];"
+			+ "var dialogs = document.querySelectorAll(\"div[role='dialog'][aria-modal='true']\");"
+			+ "var dialog = null;"
+			+ "for (var d = 0; d < dialogs.length && !dialog; d++) {"
+			+ "  if (dialogs[d].querySelector(\"select[name='accessories']\")) { dialog = dialogs[d]; } }"
+			+ "if (!dialog) { return -1; }"
+			+ "var button = null;"
+			+ "var buttons = dialog.querySelectorAll('button');"
+			+ "for (var b = 0; b < buttons.length && !button; b++) {"
+			+ "  if (buttons[b].textContent.trim() === 'Add To Cart') { button = buttons[b]; } }"
+			+ "if (!button) { return -1; }"
+			+ "var count = 0;"
+			+ "var selects = dialog.querySelectorAll(\"select[name='accessories']\");"
+			+ "for (var s = 0; s < selects.length; s++) {"
+			+ "  var select = selects[s];"
+			+ "  if (select.disabled) { continue; }"
+			+ "  var available = Array.prototype.filter.call(select.options, function(o) {"
+			+ "    return !o.disabled && o.value !== ''; });"
+			+ "  if (available.length === 0) { continue; }"
+			+ "  var chosen = available[0];"
+			+ "  if (policy === 'cheapest') {"
+			+ "    var lowest = Infinity;"
+			+ "    available.forEach(function(o) {"
+			+ "      var m = o.text.match(/\\$\\s*([\\d,]+(\\.\\d+)?)/);"
+			+ "      var price = m ? parseFloat(m[1].replace(/,/g, '')) : Infinity;"
+			+ "      if (price < lowest) { lowest = price; chosen = o; } });"
+			+ "  } else if (policy === 'sku') {"
+			+ "    available.forEach(function(o) {"
+			+ "      if (sku && (o.value === sku || o.text.indexOf(sku) >= 0)) { chosen = o; } });"
+			+ "  }"
+			+ "  select.value = chosen.value;"
+			+ "  select.dispatchEvent(new Event('input', { bubbles: true }));"
+			+ "  select.dispatchEvent(new Event('change', { bubbles: true }));"
+			+ "  count++;"
+			+ "}"
+			+ "button.click();"
+			+ "return count;";
+
+	/**
+	 * How to choose an option in each accessory dropdown
+	 */
+	public enum SelectionPolicy {
+		/** The first option that can be selected */
+		FIRST_AVAILABLE("first"),
+		/** The option with the lowest price in its text */
+		CHEAPEST("cheapest"),
+		/** The option whose value or text contains a given SKU */
+		SKU("sku");
+
+		private final String scriptName;
+
+		SelectionPolicy(String scriptName) {
+			this.scriptName = scriptName;
+		}
+
+		/**
+		 * @param name the policy name, "first", "cheapest" or "sku"
+		 * @return the policy
+		 */
+		public static SelectionPolicy fromName(String name) {
+			for (SelectionPolicy policy : values()) {
+				if (policy.scriptName.equalsIgnoreCase(name.trim())) {
+					return policy;
+				}
+			}
+			throw new IllegalArgumentException("Accessories selection policy '" + name + "' is not valid.");
+		}
+	}
+
+	private WebDriver driver;
+
+	/**
+	 * @param driver the web driver to use for this dialog
+	 */
+	public AccessoriesDialog(WebDriver driver) {
+		this.driver = driver;
+	}
+
+	/**
+	 * Waits for the result of clicking an item's Add to Cart button, either this
+	 * dialog or the "added to your cart" notification, and checks which it is.
+	 * Other modal dialogs, and hidden ones, are ignored.
+	 * <p>
+	 * Note: Keep the timeout short (but long enough to be stable), because it
+	 * only runs out if neither appears.
+	 *
+	 * @param timeoutMilliseconds the maximum time to wait for either to appear
+	 * @return true if the dialog is showing
+	 */
+	public boolean isShowing(int timeoutMilliseconds) {
+		WebElement shown = WebDriverHelper.findAnyVisibleElement(DIALOG_OR_ADDED_TO_CART_LOCATOR, driver,
+				timeoutMilliseconds, 250);
+
+		try {
+			return shown != null && "select".equalsIgnoreCase(shown.getTagName());
+		} catch (WebDriverException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks that the dialog's registered locators resolve, while it is showing.
+	 *
+	 * @return the names of the locators that didn't resolve, or an empty list
+	 */
+	public List<String> findUnresolvedLocators() {
+		return LocatorRegistry.findUnresolved(driver, ACCESSORIES_DIALOG);
+	}
+
+	/**
+	 * Reads the policy from the accessories.policy system property each time, so
+	 * a bad value falls back where the policy is used rather than failing the
+	 * class's initialization.
+	 *
+	 * @return the default policy, or {@link SelectionPolicy#FIRST_AVAILABLE} if
+	 *         the property isn't a valid policy name
+	 */
+	static SelectionPolicy findDefaultPolicy() {
+		try {
+			return SelectionPolicy.fromName(System.getProperty("accessories.policy", "first"));
+		} catch (IllegalArgumentException e) {
+			return SelectionPolicy.FIRST_AVAILABLE;
+		}
+	}
+
+	/**
+	 * Reads the SKU for the SKU policy from the accessories.sku system property
+	 * each time, like the policy.
+	 *
+	 * @return the default SKU, or an empty string if none is set
+	 */
+	static String findDefaultSku() {
+		return System.getProperty("accessories.sku", "");
+	}
+
+	/**
+	 * Checks the accessories.policy system property, for tests to report a bad
+	 * value once rather than on every dialog.
+	 *
+	 * @return a warning if the property isn't a valid policy name (so the "first"
+	 *         policy is used), or null if it is
+	 */
+	public static String findPolicyWarning() {
+		String name = System.getProperty("accessories.policy", "first");
+		try {
+			SelectionPolicy.fromName(name);
+			return null;
+		} catch (IllegalArgumentException e) {
+			return e.getMessage() + " Using the \"first\" policy instead.";
+		}
+	}
+
+	/**
+	 * Chooses an option in every accessory dropdown using the default policy
+	 * (see the accessories.policy and accessories.sku system properties) and
+	 * clicks the dialog's Add To Cart button.
+	 *
+	 * @return the number of dropdowns set, or -1 if the dialog couldn't be
+	 *         confirmed
+	 */
+	public int selectOptionsAndConfirm() {
+		return selectOptionsAndConfirm(findDefaultPolicy(), findDefaultSku());
+	}
+
+	/**
+	 * Chooses an option in every accessory dropdown and clicks the dialog's Add To
+	 * Cart button, in one call to the browser.
+	 *
+	 * @param policy how to choose each dropdown's option
+	 * @param sku    the SKU to choose for the {@link SelectionPolicy#SKU} policy,
+	 *               otherwise ignored
+	 * @return the number of dropdowns set, or -1 if the dialog couldn't be
+	 *         confirmed
+	 */
+	public int selectOptionsAndConfirm(SelectionPolicy policy, String sku) {
+		try {
+			Object count = ((JavascriptExecutor) driver).executeScript(SELECT_AND_CONFIRM_SCRIPT, policy.scriptName,
+					sku == null ? "" : sku);
+			return count == null ? -1 : ((Number) count).intValue();
+		} catch (WebDriverException e) {
+			return -1;
+		}
+	}
+}
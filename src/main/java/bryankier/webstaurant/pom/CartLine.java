@@ -0,0 +1,48 @@
+package bryankier.webstaurant.pom;
+
+/**
+ * One line (product) in the cart, as read from the cart page in a single
+ * snapshot by {@link CartPage#findCartLines()}.
+ */
+public class CartLine {
+
+	private final String description;
+	private final String itemNumber;
+	private final int quantity;
+	private final String price;
+
+	/**
+	 * @param description the product description, which is the link text
+	 * @param itemNumber  the store's item number for the product
+	 * @param quantity    the quantity in the cart
+	 * @param price       the price as displayed, including currency symbol
+	 */
+	public CartLine(String description, String itemNumber, int quantity, String price) {
+		this.description = description;
+		this.itemNumber = itemNumber;
+		this.quantity = quantity;
+		this.price = price;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public String getItemNumber() {
+		return itemNumber;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public String getPrice() {
+		return price;
+	}
+
+	@Override
+	public String toString() {
+		return "CartLine [description=" + description + ", itemNumber=" + itemNumber + ", quantity=" + quantity
+				+ ", price=" + price + "]";
+	}
+}
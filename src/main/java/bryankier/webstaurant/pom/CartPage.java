@@ -1,8 +1,19 @@
 package bryankier.webstaurant.pom;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
+import bryankier.testframework.LocatorRegistry;
+import bryankier.testframework.PageTiming;
+import bryankier.testframework.SiteDegradedException;
 import bryankier.testframework.WebDriverHelper;
 
 /**
@@ -10,9 +21,54 @@ import bryankier.testframework.WebDriverHelper;
  */
 public class CartPage {
 
-	static final By MAIN_EMPTY_CART_BUTTON_LOCATOR = By.linkText("Empty Cart");
-	static final By EMPTY_CART_CONFIRM_BUTTON_LOCATOR = By.xpath("//button[text()='Empty Cart']");
-	static final By CART_EMPTY_TEXT_LOCATOR = By.xpath("//*[text()='Your cart is empty.']");
+	/* Page name the locators are registered under, see LocatorRegistry */
+	static final String CART_PAGE = "cart";
+
+	static final By MAIN_EMPTY_CART_BUTTON_LOCATOR = LocatorRegistry.register(CART_PAGE,
+			"MAIN_EMPTY_CART_BUTTON_LOCATOR", By.linkText("Empty Cart"), true);
+	static final By EMPTY_CART_CONFIRM_BUTTON_LOCATOR = LocatorRegistry.register(CART_PAGE,
+			"EMPTY_CART_CONFIRM_BUTTON_LOCATOR", By.xpath("//button[text()='Empty Cart']"), false);
+	static final By CART_EMPTY_TEXT_LOCATOR = LocatorRegistry.register(CART_PAGE, "CART_EMPTY_TEXT_LOCATOR",
+			By.xpath("//*[text()='Your cart is empty.']"), false);
+	/**
+	 * Cart line markup read by CART_LINES_SCRIPT for {@link #findCartLines()}.
+	 * These selectors haven't been verified against the store's cart page, so the
+	 * row locator is registered as optional and the cart line details are not
+	 * used to check which items are in the cart. That check only relies on each
+	 * item's description being its link text, as the cart checks always have (see
+	 * {@link #findDescriptionsNotInCart(Collection)}).
+	 */
+	static final String CART_ITEM_ROW_SELECTOR = "div.cartItem";
+	static final By CART_ITEM_ROW_LOCATOR = LocatorRegistry.register(CART_PAGE, "CART_ITEM_ROW_LOCATOR",
+			By.cssSelector(CART_ITEM_ROW_SELECTOR), false);
+
+	/**
+	 * Reads every line in the cart in one call. arguments[0] is the row selector
+	 * (CART_ITEM_ROW_SELECTOR). Returns a list of [description, item number,
+	 * quantity, price] string lists.
+	 */
+	static final String CART_LINES_SCRIPT = "var text = function(row, sel) {"
+			+ "  var el = row.querySelector(sel);"
+			+ "  return el ? (el.value || el.textContent).replace(/\\s+/g, ' ').trim() : ''; };"
+			+ "var rows = document.querySelectorAll(arguments[0]), out = [];"
+			+ "for (var i = 0; i < rows.length; i++) {"
+			+ "  out.push([text(rows[i], '.itemDescription a, a.itemDescription'), text(rows[i], '.itemNumber'),"
+			+ "    text(rows[i], 'input.quantityInput, input[name^=\"quantity\"]'),"
+			+ "    text(rows[i], '.itemPrice, .price')]);"
+			+ "}"
+			+ "return out;";
+
+	/**
+	 * Reads the text of every visible link on the page in one call, with
+	 * whitespace collapsed, for matching item descriptions the way
+	 * {@link By#linkText(String)} does.
+	 */
+	static final String VISIBLE_LINK_TEXTS_SCRIPT = "var links = document.getElementsByTagName('a'), out = [];"
+			+ "for (var i = 0; i < links.length; i++) {"
+			+ "  if (links[i].getClientRects().length === 0) { continue; }"
+			+ "  out.push((links[i].innerText || links[i].textContent || '').replace(/\\s+/g, ' ').trim());"
+			+ "}"
+			+ "return out;";
 
 	WebDriver driver;
 	StoreGlobalHeader globalMenu;
@@ -26,14 +82,81 @@ public class CartPage {
 	}
 
 	/**
-	 * finds an item in the cart matching the given description
+	 * Reads every line in the cart (description, item number, quantity and price)
+	 * in a single call to the browser, after waiting for the Empty Cart button so
+	 * the cart has loaded.
+	 * <p>
+	 * Note: The cart line selectors haven't been verified (see
+	 * CART_ITEM_ROW_SELECTOR), so an empty list may only mean they don't match.
+	 * Use {@link #findDescriptionsNotInCart(Collection)} to check which items are
+	 * in the cart.
 	 * 
-	 * @param itemDescription the description, which is the link text
-	 * @return the link element
+	 * @return the lines in the cart, in page order, or an empty list if none are
+	 *         found
+	 */
+	@SuppressWarnings("unchecked")
+	public List<CartLine> findCartLines() {
+		List<CartLine> lines = new ArrayList<CartLine>();
+
+		if (findEmptyCartButtonOnMainCartPage() == null) {
+			return lines;
+		}
+
+		List<List<String>> rows = (List<List<String>>) ((JavascriptExecutor) driver)
+				.executeScript(CART_LINES_SCRIPT, CART_ITEM_ROW_SELECTOR);
+
+		for (List<String> row : rows) {
+			int quantity = 0;
+			try {
+				quantity = Integer.parseInt(row.get(2).replaceAll("[^0-9]", ""));
+			} catch (NumberFormatException e) {
+				// leave as zero if the quantity isn't displayed as a number
+			}
+			lines.add(new CartLine(row.get(0), row.get(1), quantity, row.get(3)));
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Finds which of the expected item descriptions are not in the cart, after
+	 * waiting for the Empty Cart button so the cart has loaded. Each item's
+	 * description is its link text in the cart, so the page's visible link texts
+	 * are read in a single call to the browser and every description is checked
+	 * against them. Checking any number of items costs the same as checking one.
+	 * 
+	 * @param itemDescriptions the descriptions expected to be in the cart, which
+	 *                         are the link texts
+	 * @return the descriptions that were not found, or an empty list if all were
+	 *         found
+	 */
+	@SuppressWarnings("unchecked")
+	public List<String> findDescriptionsNotInCart(Collection<String> itemDescriptions) {
+		Set<String> linkTexts = new HashSet<String>();
+		if (findEmptyCartButtonOnMainCartPage() != null) {
+			linkTexts.addAll(
+					(List<String>) ((JavascriptExecutor) driver).executeScript(VISIBLE_LINK_TEXTS_SCRIPT));
+		}
+
+		List<String> missing = new ArrayList<String>();
+		for (String description : itemDescriptions) {
+			// whitespace is collapsed when reading the link texts, so compare the same way
+			if (description == null || !linkTexts.contains(description.replaceAll("\\s+", " ").trim())) {
+				missing.add(description);
+			}
+		}
+
+		return missing;
+	}
+
+	/**
+	 * Checks whether items with all of the given descriptions are in the cart.
+	 * 
+	 * @param itemDescriptions the descriptions, which are the link texts
+	 * @return true if every description is found
 	 */
-	private WebElement findItemDescriptionInCart(String itemDescription) { // TODO find by product number where
-																			// appropriate
-		return WebDriverHelper.findClickableElement(By.linkText(itemDescription), driver, 10000, 250);
+	public boolean itemsWithDescriptionsAreInCart(Collection<String> itemDescriptions) {
+		return findDescriptionsNotInCart(itemDescriptions).isEmpty();
 	}
 
 	/**
@@ -43,7 +166,30 @@ public class CartPage {
 	 * @return true if the description is found
 	 */
 	public boolean itemWithDescriptionIsInCart(String itemDescription) {
-		return findItemDescriptionInCart(itemDescription) != null;
+		return itemsWithDescriptionsAreInCart(Collections.singletonList(itemDescription));
+	}
+
+	/**
+	 * Reads the browser-side load timing (TTFB, DOMContentLoaded, load, first
+	 * contentful paint) of the last full page load.
+	 * 
+	 * @return the page timing
+	 */
+	public PageTiming findPageTiming() {
+		return PageTiming.collect(driver);
+	}
+
+	/**
+	 * Checks that the cart page's registered locators resolve, after waiting for
+	 * the Empty Cart button so the page has loaded. The cart must have items in
+	 * it.
+	 * 
+	 * @return the names of the locators that didn't resolve, or an empty list
+	 */
+	public List<String> findUnresolvedLocators() {
+		findEmptyCartButtonOnMainCartPage();
+
+		return LocatorRegistry.findUnresolved(driver, CART_PAGE);
 	}
 
 	/**
@@ -80,6 +226,8 @@ public class CartPage {
 			findEmptyCartConfirmationButton().click();
 
 			success = true;
+		} catch (SiteDegradedException e) {
+			throw e;
 		} catch (Exception e) {
 			success = false;
 		}
@@ -91,6 +239,31 @@ public class CartPage {
 		return success;
 	}
 
+	/**
+	 * Quickly resets the cart for cleanup, by dropping the browser session's
+	 * cookies and storage instead of using the Empty Cart buttons. The store
+	 * keeps the cart with the session, so the page is reloaded to confirm the
+	 * cart is now empty. Use {@link #emptyCart()} when emptying the cart is being
+	 * tested.
+	 * 
+	 * @return true if the session state was cleared and, after reloading the page,
+	 *         the cart count in the global header menu is zero
+	 */
+	public boolean resetCart() {
+		boolean success = WebDriverHelper.clearSessionState(driver);
+
+		try {
+			WebDriverHelper.navigate(driver, driver.getCurrentUrl());
+			success &= globalMenu.findCartItemCount() == 0;
+		} catch (SiteDegradedException e) {
+			throw e;
+		} catch (Exception e) {
+			success = false;
+		}
+
+		return success;
+	}
+
 	/**
 	 * Finds large text saying "Your cart is empty."
 	 * 
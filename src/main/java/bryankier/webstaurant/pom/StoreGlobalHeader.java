@@ -1,9 +1,12 @@
 package bryankier.webstaurant.pom;
 
+import java.util.List;
+
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 
+import bryankier.testframework.LocatorRegistry;
 import bryankier.testframework.WebDriverHelper;
 
 /**
@@ -13,7 +16,11 @@ import bryankier.testframework.WebDriverHelper;
  */
 public class StoreGlobalHeader {
 
-	static final By CART_COUNT_LOCATOR = By.id("cartItemCountSpan");
+	/* Page name the locators are registered under, see LocatorRegistry */
+	static final String HEADER = "header";
+
+	static final By CART_COUNT_LOCATOR = LocatorRegistry.register(HEADER, "CART_COUNT_LOCATOR",
+			By.id("cartItemCountSpan"), true);
 
 	WebDriver driver;
 
@@ -24,6 +31,15 @@ public class StoreGlobalHeader {
 		this.driver = driver;
 	}
 
+	/**
+	 * Checks that the header's registered locators resolve on the current page.
+	 * 
+	 * @return the names of the locators that didn't resolve, or an empty list
+	 */
+	public List<String> findUnresolvedLocators() {
+		return LocatorRegistry.findUnresolved(driver, HEADER);
+	}
+
 	private WebElement findCartItemCountElem() {
 		return WebDriverHelper.findClickableElement(CART_COUNT_LOCATOR, driver, 30000, 500);
 	}
@@ -1,36 +1,131 @@
 package bryankier.webstaurant.pom;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.openqa.selenium.By;
-import org.openqa.selenium.Keys;
+import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.interactions.Actions;
+import bryankier.testframework.BrowserSessionSnapshot;
+import bryankier.testframework.LocatorRegistry;
+import bryankier.testframework.PageTiming;
+import bryankier.testframework.SiteDegradedException;
+import bryankier.testframework.SiteHealthMonitor;
 import bryankier.testframework.WebDriverHelper;
 
 public class StoreHomePage {
 
 	static final String PRODUCTION_URL = "https://www.webstaurantstore.com";
-	static final By SEARCH_BUTTON_LOCATOR = By.xpath("//button[text()='Search']");
-	static final By SEARCH_TEXTBOX_LOCATOR = By.id("searchval");
-	static final By GRIDVIEW_BUTTON_LOCATOR = By.xpath("//button[@aria-label='Switch to Grid view']");
-	static final By LISTVIEW_BUTTON_LOCATOR = By.xpath("//button[@aria-label='Switch to List view']");
+	static final String LOCAL_URL = "http://localhost:8080";
+
+	/* Page names the locators are registered under, see LocatorRegistry */
+	static final String HOME_PAGE = "home";
+	static final String SEARCH_RESULTS_PAGE = "search";
+
+	static final By SEARCH_BUTTON_LOCATOR = LocatorRegistry.register(HOME_PAGE, "SEARCH_BUTTON_LOCATOR",
+			By.xpath("//button[text()='Search']"), true);
+	static final By SEARCH_TEXTBOX_LOCATOR = LocatorRegistry.register(HOME_PAGE, "SEARCH_TEXTBOX_LOCATOR",
+			By.id("searchval"), true);
+	static final By GRIDVIEW_BUTTON_LOCATOR = LocatorRegistry.register(SEARCH_RESULTS_PAGE, "GRIDVIEW_BUTTON_LOCATOR",
+			By.xpath("//button[@aria-label='Switch to Grid view']"), true);
+	static final By LISTVIEW_BUTTON_LOCATOR = LocatorRegistry.register(SEARCH_RESULTS_PAGE, "LISTVIEW_BUTTON_LOCATOR",
+			By.xpath("//button[@aria-label='Switch to List view']"), true);
 //	static final By SEARCH_RESULT_BOX_lOCATOR = By
 //			.xpath("//div[@id='product_listing']//div[@id='ProductBoxContainer']");
-	static final By SEARCH_RESULT_BOX_lOCATOR = By.id("ProductBoxContainer");
-	static final By SEARCH_RESULT_LINK_LOCATOR = By.xpath(".//a[@data-testid='itemDescription']");
-	static final By SEARCH_RESULT_CART_BUTTON_LOCATOR = By.xpath(".//input[@name='addToCartButton']");
-	static final By ADDED_TO_CART_CLOSE_BUTTON_LOCATOR = By
-			.xpath("//div[@class='notification__content']/../button[@class='close']");
-	static final By ACCESSORY_DROPDOWN_LOCATOR = By.xpath("//select[@name='accessories']");
-	static final By ACCESSORY_CLOSE_BUTTON_LOCATOR = By
-			.xpath("//div[@role='dialog'][@aria-modal='true']//button[text()='Add To Cart']");
+	static final By SEARCH_RESULT_BOX_lOCATOR = LocatorRegistry.register(SEARCH_RESULTS_PAGE,
+			"SEARCH_RESULT_BOX_lOCATOR", By.id("ProductBoxContainer"), true);
+	static final By SEARCH_RESULT_LINK_LOCATOR = LocatorRegistry.register(SEARCH_RESULTS_PAGE,
+			"SEARCH_RESULT_LINK_LOCATOR", By.xpath(".//a[@data-testid='itemDescription']"), true);
+	static final By SEARCH_RESULT_CART_BUTTON_LOCATOR = LocatorRegistry.register(SEARCH_RESULTS_PAGE,
+			"SEARCH_RESULT_CART_BUTTON_LOCATOR", By.xpath(".//input[@name='addToCartButton']"), true);
+	/**
+	 * The next-page button is the second to last item in the page navigation
+	 * control. Not expected on single-page results.
+	 */
+	static final By NAV_NEXT_PAGE_BUTTON_LOCATOR = LocatorRegistry.register(SEARCH_RESULTS_PAGE,
+			"NAV_NEXT_PAGE_BUTTON_LOCATOR",
+			By.cssSelector("nav[aria-label='pagination'] > ul > li:nth-last-of-type(2)"), false);
+	static final By ADDED_TO_CART_CLOSE_BUTTON_LOCATOR = LocatorRegistry.register(SEARCH_RESULTS_PAGE,
+			"ADDED_TO_CART_CLOSE_BUTTON_LOCATOR",
+			By.xpath("//div[@class='notification__content']/../button[@class='close']"), false);
+
+	/**
+	 * Reads the product link (URL, which includes the item number, and
+	 * description) from every search result box on the page in one call. Uses a
+	 * plain loop rather than NodeList.forEach, so it also runs in HtmlUnit. Keep the
+	 * selectors in line with SEARCH_RESULT_BOX_lOCATOR and
+	 * SEARCH_RESULT_LINK_LOCATOR.
+	 */
+	static final String RESULT_SIGNATURES_SCRIPT = "var out = [];"
+			+ "var boxes = document.querySelectorAll(\"[id='ProductBoxContainer']\");"
+			+ "for (var i = 0; i < boxes.length; i++) {"
+			+ "  var link = boxes[i].querySelector(\"a[data-testid='itemDescription']\");"
+			+ "  out.push(link ? link.getAttribute('href') + '\\t' + link.textContent.trim() : '');"
+			+ "}"
+			+ "return out;";
+
+	/**
+	 * Search results URL path and query parameter, for going to the results for a
+	 * search term directly instead of typing it in the search box.
+	 * <p>
+	 * Note: This hasn't been verified against the store's results page, so going
+	 * to the results directly is off by default in the tests. The layout and page
+	 * size have no URL parameters here; the layout is selected with the layout
+	 * buttons, and the page size is the site's default.
+	 */
+	static final String SEARCH_RESULTS_PATH = "/search/";
+	static final String SEARCH_TEXT_PARAM = "searchval";
+
+	/**
+	 * A small page on the store's site to load before restoring a prepared
+	 * session when the first page loaded needs the restored state, since cookies
+	 * can only be set for the site the browser is on
+	 */
+	static final String LIGHTWEIGHT_PATH = "/robots.txt";
+
+	/**
+	 * Browser state prepared by the first test in each environment, shared with
+	 * later tests (including those running in parallel)
+	 */
+	private static final Map<String, BrowserSessionSnapshot> PREPARED_SESSIONS =
+			new ConcurrentHashMap<String, BrowserSessionSnapshot>();
+
+	/**
+	 * The results layout selected when each environment's prepared session was
+	 * saved, for environments where the setup steps changed the saved browser
+	 * state, so restoring it also restores the layout preference
+	 */
+	private static final Map<String, String> PREPARED_LAYOUTS = new ConcurrentHashMap<String, String>();
 
 	private WebDriver driver;
 	private String environment;
 	private StoreGlobalHeader globalMenu;
+	private AccessoriesDialog accessoriesDialog;
+
+	/**
+	 * Browser state when the home page was first loaded without a prepared
+	 * session, so only what the later setup steps changed is saved
+	 */
+	private BrowserSessionSnapshot preparationBaseline;
+
+	/**
+	 * The accessories dialog's locators that didn't resolve the last time it was
+	 * checked while adding an item to the cart, or null if it hasn't been
+	 */
+	private List<String> unresolvedAccessoriesDialogLocators;
+
+	/**
+	 * The results layout ("grid" or "list") known to be in effect, from
+	 * {@link #setResultsLayout(String)} or a restored prepared session, or null if
+	 * it isn't known
+	 */
+	private String resultsLayout;
 
 	/**
 	 * Currently used to keep track of the page number based on when next page is
@@ -49,6 +144,7 @@ public class StoreHomePage {
 		this.driver = driver;
 		this.environment = environment;
 		globalMenu = new StoreGlobalHeader(driver);
+		accessoriesDialog = new AccessoriesDialog(driver);
 	}
 
 	/**
@@ -67,9 +163,16 @@ public class StoreHomePage {
 	 * @return
 	 */
 	private String buildUrl() {
+		return buildUrl(environment);
+	}
+
+	private static String buildUrl(String environment) {
 		String returnUrl = "";
 		if (environment.toLowerCase().contains("prod")) {
 			returnUrl = PRODUCTION_URL;
+		} else if (environment.toLowerCase().contains("local")) {
+			// a local stand-in for the store, e.g. for load runs
+			returnUrl = System.getProperty("store.localUrl", LOCAL_URL);
 		} else {
 			throw new IllegalArgumentException("Environment '" + environment + "' is not valid or not implemented.");
 		}
@@ -81,7 +184,174 @@ public class StoreHomePage {
 	 * Builds and navigates to this page's home URL
 	 */
 	public void go() {
-		driver.get(buildUrl());
+		WebDriverHelper.navigate(driver, buildUrl());
+	}
+
+	/**
+	 * Gets a small page on the site to probe whether it is responding, see
+	 * {@link SiteHealthMonitor#awaitHealthy(String, long)}. It needs no driver, so
+	 * the site can be probed before a browser is started.
+	 * 
+	 * @param environment the testing environment
+	 * @return the probe URL
+	 */
+	public static String getHealthProbeUrl(String environment) {
+		return buildUrl(environment) + LIGHTWEIGHT_PATH;
+	}
+
+	/**
+	 * Builds the URL of the search results for a search term.
+	 * 
+	 * @param searchText the text to search for
+	 * @return the search results URL
+	 */
+	String buildSearchUrl(String searchText) {
+		try {
+			return buildUrl() + SEARCH_RESULTS_PATH + "?" + SEARCH_TEXT_PARAM + "="
+					+ URLEncoder.encode(searchText, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Goes straight to the first page of search results for a search term in one
+	 * navigation, then selects the results layout if it isn't already in effect
+	 * (see {@link #ensureResultsLayout(String)}). This skips the home page and the
+	 * search box, so use {@link #searchProducts(String)} when searching through
+	 * the UI is being tested.
+	 * 
+	 * @param searchText   the text to search for
+	 * @param layoutOption the results layout, grid or list
+	 */
+	public void goToSearchResults(String searchText, String layoutOption) {
+		WebDriverHelper.navigate(driver, buildSearchUrl(searchText));
+		pageNumber = 1;
+		ensureResultsLayout(layoutOption);
+	}
+
+	/**
+	 * Like {@link #goToSearchResults(String, String)}, but first restores the
+	 * browser state prepared by an earlier test in this environment, if there is
+	 * one (see {@link #savePreparedSession()}). With a restored session, the
+	 * layout click is skipped when the prepared layout is the one wanted.
+	 * 
+	 * @param searchText   the text to search for
+	 * @param layoutOption the results layout, grid or list
+	 * @return true if a prepared session was restored, false if there wasn't one
+	 */
+	public boolean goToSearchResultsFromPreparedSession(String searchText, String layoutOption) {
+		BrowserSessionSnapshot snapshot = PREPARED_SESSIONS.get(environment.toLowerCase());
+		if (snapshot == null) {
+			WebDriverHelper.navigate(driver, buildSearchUrl(searchText));
+			pageNumber = 1;
+			// so only what selecting the layout changes is saved as the prepared session
+			preparationBaseline = BrowserSessionSnapshot.capture(driver);
+			ensureResultsLayout(layoutOption);
+			return false;
+		}
+
+		boolean restored = snapshot.restore(driver, buildUrl() + LIGHTWEIGHT_PATH, buildSearchUrl(searchText));
+		pageNumber = 1;
+		if (restored) {
+			resultsLayout = PREPARED_LAYOUTS.get(environment.toLowerCase());
+		}
+		ensureResultsLayout(layoutOption);
+
+		return restored;
+	}
+
+	/**
+	 * Navigates to this page's home URL and restores the browser state that was
+	 * prepared by an earlier test in this environment (see
+	 * {@link #savePreparedSession()}), if there is one, in the same single
+	 * navigation as {@link #go()}. The state applies from the next page (the
+	 * search results) on.
+	 * <p>
+	 * The restore saves the setup the prepared state covers: popups already
+	 * dismissed, and the results layout, so
+	 * {@link #ensureResultsLayout(String)} skips the layout click when the
+	 * prepared layout is the one wanted. The search itself is still done through
+	 * the search box.
+	 * 
+	 * @return true if a prepared session was restored, false if there wasn't one
+	 *         and the page was loaded fresh
+	 */
+	public boolean goFromPreparedSession() {
+		BrowserSessionSnapshot snapshot = PREPARED_SESSIONS.get(environment.toLowerCase());
+		if (snapshot == null) {
+			go();
+			preparationBaseline = BrowserSessionSnapshot.capture(driver);
+			return false;
+		}
+
+		boolean restored = snapshot.restore(driver, buildUrl());
+		if (restored) {
+			resultsLayout = PREPARED_LAYOUTS.get(environment.toLowerCase());
+		}
+
+		return restored;
+	}
+
+	/**
+	 * Saves the browser state (preferences, dismissed popups, etc.) that changed
+	 * since the home page was loaded by {@link #goFromPreparedSession()} as the
+	 * prepared session for this environment, unless one was already saved, so
+	 * later tests can restore it instead of repeating the setup. Cookies that
+	 * were already set on the first page load (session, cart, tracking) are left
+	 * out.
+	 * <p>
+	 * The results layout is only taken to be part of the prepared session if the
+	 * setup steps changed the saved state; otherwise the layout preference isn't
+	 * kept where it can be restored, and later tests still select it.
+	 */
+	public void savePreparedSession() {
+		if (!PREPARED_SESSIONS.containsKey(environment.toLowerCase())) {
+			BrowserSessionSnapshot snapshot = BrowserSessionSnapshot.capture(driver);
+			if (preparationBaseline != null) {
+				snapshot = snapshot.changedSince(preparationBaseline);
+			}
+			if (PREPARED_SESSIONS.putIfAbsent(environment.toLowerCase(), snapshot) == null && resultsLayout != null
+					&& !snapshot.isEmpty()) {
+				PREPARED_LAYOUTS.put(environment.toLowerCase(), resultsLayout);
+			}
+		}
+	}
+
+	/**
+	 * Reads the browser-side load timing (TTFB, DOMContentLoaded, load, first
+	 * contentful paint) of the last full page load.
+	 * 
+	 * @return the page timing
+	 */
+	public PageTiming findPageTiming() {
+		return PageTiming.collect(driver);
+	}
+
+	/**
+	 * Checks that the home page's registered locators (including the global
+	 * header's) resolve, after waiting for the search box so the page has loaded.
+	 * 
+	 * @return the names of the locators that didn't resolve, or an empty list
+	 */
+	public List<String> findUnresolvedHomePageLocators() {
+		findSearchTextBox();
+		List<String> unresolved = LocatorRegistry.findUnresolved(driver, HOME_PAGE);
+		unresolved.addAll(globalMenu.findUnresolvedLocators());
+
+		return unresolved;
+	}
+
+	/**
+	 * Checks that the search results page's registered locators resolve, after
+	 * waiting for the first result so the page has loaded.
+	 * 
+	 * @return the names of the locators that didn't resolve, or an empty list
+	 */
+	public List<String> findUnresolvedSearchResultsLocators() {
+		findResultItemBoxes(0, 1);
+
+		return LocatorRegistry.findUnresolved(driver, SEARCH_RESULTS_PAGE);
 	}
 
 	/**
@@ -162,17 +432,60 @@ public class StoreHomePage {
 		} else {
 			findGridViewButton().click();
 		}
+		resultsLayout = toLayoutName(layoutOption);
+	}
+
+	/**
+	 * Sets the search results layout, unless it is already known to be in effect
+	 * because a prepared session with that layout was restored (see
+	 * {@link #goFromPreparedSession()}).
+	 * 
+	 * @param layoutOption the results layout to select, grid or list
+	 * @return true if the layout was selected, false if it was already in effect
+	 */
+	public boolean ensureResultsLayout(String layoutOption) {
+		if (toLayoutName(layoutOption).equals(resultsLayout)) {
+			return false;
+		}
+
+		setResultsLayout(layoutOption);
+		return true;
+	}
+
+	private static String toLayoutName(String layoutOption) {
+		return layoutOption.toLowerCase().contains("list") ? "list" : "grid";
 	}
 
 	/**
-	 * Finds all of the items in the search results on this page
+	 * Finds a window of the items in the search results on this page, in page
+	 * order, so very large result pages can be processed a chunk at a time.
 	 * 
-	 * @return a list of all of the parent boxes containing one search result each,
-	 *         or an empty list if not found
+	 * @param fromIndex index of the first result on this page to return
+	 * @param maxCount  maximum number of results to return
+	 * @return the parent boxes containing one search result each, or an empty list
+	 *         if there are no results in the window
 	 */
-	public List<WebElement> findAllResultItemBoxes() {
-		// SLOW:
-		return WebDriverHelper.findVisibleElements(SEARCH_RESULT_BOX_lOCATOR, driver, 30000, 500);
+	public List<WebElement> findResultItemBoxes(int fromIndex, int maxCount) {
+		return WebDriverHelper.findVisibleElementsInRange(SEARCH_RESULT_BOX_lOCATOR, driver, fromIndex, maxCount,
+				30000, 500);
+	}
+
+	/**
+	 * Gets a signature for each search result on this page, in order, consisting
+	 * of the product link URL (which includes the item number) and description.
+	 * Waits for the results to load first. This is one call to the browser
+	 * regardless of the number of results, so it's suitable for fingerprinting
+	 * the page's content.
+	 * 
+	 * @return the signatures, or an empty list if no results are found
+	 */
+	@SuppressWarnings("unchecked")
+	public List<String> findResultItemSignatures() {
+		if (findResultItemBoxes(0, 1).isEmpty()) {
+			return new ArrayList<String>();
+		}
+
+		return (List<String>) ((JavascriptExecutor) driver).executeScript(RESULT_SIGNATURES_SCRIPT);
 	}
 
 	/**
@@ -198,6 +511,8 @@ public class StoreHomePage {
 	public String findLinkTextInItemBox(WebElement parentBox) {
 		try {
 			return findLinkInItemBox(parentBox).getText();
+		} catch (SiteDegradedException e) {
+			throw e;
 		} catch (Exception e) {
 			return "[Unable to get link text (Error='" + e.getMessage() + "')]";
 		}
@@ -215,13 +530,26 @@ public class StoreHomePage {
 	 * @return true if the expected text is found within the link description
 	 */
 	public boolean itemLinkContains(WebElement parentBox, String containedText, boolean ignoreCase) {
-		String itemBoxText = findLinkTextInItemBox(parentBox);
+		return descriptionContains(findLinkTextInItemBox(parentBox), containedText, ignoreCase);
+	}
+
+	/**
+	 * Checks whether a product description, already read from a search result,
+	 * contains the specified text.
+	 * 
+	 * @param description   the product description
+	 * @param containedText the text that is expected to be contained in the
+	 *                      description
+	 * @param ignoreCase    ignore capitalization when comparing text
+	 * @return true if the expected text is found within the description
+	 */
+	public static boolean descriptionContains(String description, String containedText, boolean ignoreCase) {
 		if (ignoreCase) {
 			containedText = containedText.toLowerCase(); // immutable, won't modify original
-			itemBoxText = itemBoxText.toLowerCase();
+			description = description.toLowerCase();
 		}
 
-		return itemBoxText.contains(containedText);
+		return description.contains(containedText);
 	}
 
 	/**
@@ -255,23 +583,51 @@ public class StoreHomePage {
 	 * parameter. Checks that the number of items in the cart increases.
 	 * 
 	 * @param parentBox        the item's containing search results box element
-	 * @param allowAccessories if true, attempt to handle prompts to add accessories
-	 *                         to the cart by arbitrarily selecting accessories
+	 * @param allowAccessories if true, handle prompts to add accessories to the
+	 *                         cart by selecting accessories, see
+	 *                         {@link AccessoriesDialog}
 	 * @return true it the item passes the checks in this method to verify it was
 	 *         added to the cart
 	 */
 	public boolean addItemInBoxToCart(WebElement parentBox, boolean allowAccessories) {
+		return addItemInBoxToCart(parentBox, allowAccessories, false);
+	}
+
+	/**
+	 * Like {@link #addItemInBoxToCart(WebElement, boolean)}, optionally also
+	 * checking the accessories dialog's locators while it is showing (see
+	 * {@link #getUnresolvedAccessoriesDialogLocators()}).
+	 * 
+	 * @param parentBox                the item's containing search results box
+	 *                                 element
+	 * @param allowAccessories         if true, handle prompts to add accessories
+	 *                                 to the cart by selecting accessories
+	 * @param checkAccessoriesLocators if true and the accessories dialog appears,
+	 *                                 check that its locators resolve
+	 * @return true it the item passes the checks in this method to verify it was
+	 *         added to the cart
+	 */
+	public boolean addItemInBoxToCart(WebElement parentBox, boolean allowAccessories,
+			boolean checkAccessoriesLocators) {
 		boolean success = false;
 
 		try {
 			int cartCountBefore = findCartItemCount();
 			clickAddToCartButtonInItemBox(parentBox);
 
-			if (allowAccessories) {
-				trySelectingAccessoriesDialogOptions();
+			if (allowAccessories && accessoriesDialog.isShowing(2000)) {
+				if (checkAccessoriesLocators) {
+					unresolvedAccessoriesDialogLocators = accessoriesDialog.findUnresolvedLocators();
+				}
+
+				// if the dialog couldn't be confirmed, the cart count still tells whether the
+				// item was added
+				accessoriesDialog.selectOptionsAndConfirm();
 			}
 
 			success = cartCountIncreased(cartCountBefore);
+		} catch (SiteDegradedException e) {
+			throw e;
 		} catch (Exception e) {
 			success = false;
 		}
@@ -279,18 +635,23 @@ public class StoreHomePage {
 		return success;
 	}
 
+	/**
+	 * @return the accessories dialog's locators that didn't resolve the last time
+	 *         they were checked by
+	 *         {@link #addItemInBoxToCart(WebElement, boolean, boolean)}, or null if
+	 *         the dialog hasn't been checked
+	 */
+	public List<String> getUnresolvedAccessoriesDialogLocators() {
+		return unresolvedAccessoriesDialogLocators;
+	}
+
 	/**
 	 * Finds the next page button on the right side of the page navigation control.
 	 * 
 	 * @return the next-page button element, or null if it is not found
 	 */
 	private WebElement findNavNextPageButton() {
-		String xPath = "//nav[@aria-label='pagination']/ul/li";
-		int pageRightButtonIndex = WebDriverHelper.countElements(By.xpath(xPath), driver, 30000, 500) - 1;
-		WebElement pageRightButton = WebDriverHelper
-				.findVisibleElement(By.xpath(xPath + "[" + pageRightButtonIndex + "]"), driver, 15000, 500);
-
-		return pageRightButton;
+		return WebDriverHelper.findVisibleElement(NAV_NEXT_PAGE_BUTTON_LOCATOR, driver, 30000, 500);
 	}
 
 	/**
@@ -303,6 +664,8 @@ public class StoreHomePage {
 		boolean isDisabled = false;
 		try {
 			isDisabled = findNavNextPageButton().getAttribute("aria-disabled").equals("true");
+		} catch (SiteDegradedException e) {
+			throw e;
 		} catch (Exception e) {
 			// return whether it is specifically disabled, so false
 			isDisabled = false;
@@ -380,55 +743,11 @@ public class StoreHomePage {
 	public void tryClickAddedToYourCartCloseButton() {
 		try {
 			findAddedToYourCartCloseButton().click();
+		} catch (SiteDegradedException e) {
+			throw e;
 		} catch (Exception e) {
 
 		}
 	}
 
-	/* Product Accessories Dialog Window - consider moving to separate class */
-	/**
-	 * Finds all of the dropdown boxes for accessory options for the product being
-	 * added to the cart.
-	 * <p>
-	 * Note: Keep the timeout short (but long enough to be stable). Because this is
-	 * part of a dialog that isn't expected to always be there, the timeout will
-	 * have to expire to determine that it's not present.
-	 * 
-	 * @return the list of accessory option dropdown elements, or an empty list if
-	 *         not found
-	 */
-	private List<WebElement> findDropDownsInProductAccessoriesDialog() {
-		return WebDriverHelper.findClickableElements(ACCESSORY_DROPDOWN_LOCATOR, driver, 1, 2000, 250);
-	}
-
-	/**
-	 * Attempts to find and select options from dropdown boxes in the dialog that
-	 * may appears when adding an item with optional accessories to the cart.
-	 */
-	public void trySelectingAccessoriesDialogOptions() {
-		try {
-			List<WebElement> accessoriesDropdowns = findDropDownsInProductAccessoriesDialog();
-			for (WebElement dd : accessoriesDropdowns) {
-				new Actions(driver).sendKeys(dd, Keys.ARROW_DOWN).sendKeys(Keys.ENTER).perform();
-			}
-
-			if (accessoriesDropdowns.size() > 0) {
-				findAddToCartButtonInAccessoriesDialog().click();
-			}
-		} catch (Exception e) {
-			// just trying, this may not even exist so keep going
-		}
-	}
-
-	/**
-	 * Attempts to find the Add to Cart button in the accessories dialog that may
-	 * appears when adding an item with optional accessories to the cart.
-	 * 
-	 * @return the Add to Cart button in the Accessories dialog, or null if it is
-	 *         not found
-	 */
-	private WebElement findAddToCartButtonInAccessoriesDialog() {
-		return WebDriverHelper.findClickableElement(ACCESSORY_CLOSE_BUTTON_LOCATOR, driver, 1000, 250);
-	}
-
 }
@@ -1,6 +1,13 @@
 package bryankier.webstaurant.tests;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebDriverException;
@@ -9,9 +16,22 @@ import org.testng.Reporter;
 import org.testng.annotations.AfterTest;
 //import org.testng.annotations.Parameters;
 import org.testng.annotations.Test;
+import org.testng.asserts.IAssert;
 import org.testng.asserts.SoftAssert;
 
 import bryankier.testframework.DriverFactory;
+import bryankier.testframework.DriverFeature;
+import bryankier.testframework.FailureArtifactCollector;
+import bryankier.testframework.ItemResultWriter;
+import bryankier.testframework.PageTiming;
+import bryankier.testframework.PerformanceBudget;
+import bryankier.testframework.SiteDegradedException;
+import bryankier.testframework.SiteHealthMonitor;
+import bryankier.testframework.StepLatencyStats;
+import bryankier.testframework.ValidationFingerprintCache;
+import bryankier.testframework.WaitDiagnostics;
+import bryankier.testframework.events.TestStepEvent;
+import bryankier.webstaurant.pom.AccessoriesDialog;
 import bryankier.webstaurant.pom.CartPage;
 import bryankier.webstaurant.pom.StoreHomePage;
 
@@ -22,10 +42,107 @@ import bryankier.webstaurant.pom.StoreHomePage;
  */
 public class WebstaurantStoreTests {
 
+	/**
+	 * Number of search results to retrieve and check at a time on each page
+	 */
+	static final int RESULT_CHUNK_SIZE = 20;
+
+	/**
+	 * JSONL file that per-item search results are streamed to as the test runs.
+	 * Can be overridden with the itemResults.file system property.
+	 */
+	static final String ITEM_RESULTS_FILE = System.getProperty("itemResults.file", "target/item-results.jsonl");
+
+	/**
+	 * Whether to skip item checks on results pages whose content fingerprint
+	 * already passed validation, in this or an earlier run. Off by default, so a
+	 * functional run checks every page; set the validatedPages.skip system
+	 * property to true for repeated runs against the same site build.
+	 */
+	static final boolean SKIP_VALIDATED_PAGES = Boolean
+			.parseBoolean(System.getProperty("validatedPages.skip", "false"));
+
+	/**
+	 * Fingerprints of results pages that passed validation, kept between runs.
+	 * The file can be changed with the validatedPages.file system property.
+	 */
+	static final ValidationFingerprintCache VALIDATED_PAGES = new ValidationFingerprintCache(
+			System.getProperty("validatedPages.file",
+					System.getProperty("user.home") + "/.webstaurant-tests/validated-pages.properties"));
+
+	/**
+	 * Whether to clean up the cart by clearing the session state instead of
+	 * emptying it through the UI, which is much faster when emptying the cart
+	 * isn't what is being tested. Set with the cart.fastReset system property
+	 * (defaults to false, since this test covers emptying the cart).
+	 */
+	static final boolean FAST_CART_RESET = Boolean.parseBoolean(System.getProperty("cart.fastReset", "false"));
+
+	/**
+	 * Saves failure artifacts in the background. The folder can be changed with
+	 * the failureArtifacts.folder system property.
+	 */
+	static final FailureArtifactCollector FAILURE_ARTIFACTS = new FailureArtifactCollector(
+			System.getProperty("failureArtifacts.folder", "target/failure-artifacts"), 20);
+
+	/**
+	 * Browser-side load timing of each page visited during the run, and the time
+	 * each test took to get to its search results with and without a restored
+	 * prepared session, for the page performance summary
+	 */
+	static final StepLatencyStats PAGE_PERFORMANCE = new StepLatencyStats();
+
+	/**
+	 * Whether tests after the first in each environment go straight to the search
+	 * results URL (restoring the prepared session, if there is one) instead of
+	 * loading the home page and typing in the search box. The first test always
+	 * searches through the UI, so search input and the home page's locator check
+	 * are still covered in every run, but the home page's load timing is only
+	 * checked by tests that search through the UI. Off by default, since the
+	 * search URL hasn't been verified against the store; set the search.direct
+	 * system property to true to enable it.
+	 */
+	static final boolean DIRECT_SEARCH = Boolean.parseBoolean(System.getProperty("search.direct", "false"));
+
+	/**
+	 * Maximum time a test waits at its start for the site to recover, when other
+	 * tests have found it degraded (see SiteHealthMonitor). Set with the
+	 * health.maxWaitMs system property.
+	 */
+	static final long SITE_RECOVERY_MAX_WAIT_MILLISECONDS = Long.getLong("health.maxWaitMs", 120000);
+
+	/**
+	 * The registered locators that didn't resolve on each page already checked in
+	 * this run, by page name. Each page is checked once, by the first test to
+	 * reach it; every test after that (including those running in parallel,
+	 * which wait for the check) fails as soon as it reaches the page, and at its
+	 * start, if any checked page has broken locators. Guarded by itself.
+	 */
+	static final Map<String, List<String>> UNRESOLVED_LOCATORS = new HashMap<String, List<String>>();
+
 	WebDriver driver;
 	String environment;
 	String browser;
 
+	/**
+	 * Description of the test step currently being performed, for failure
+	 * messages and artifacts
+	 */
+	String stepDescr;
+
+	/**
+	 * Name of the test currently running, for failure artifacts and recorded step
+	 * events
+	 */
+	String testName;
+
+	/**
+	 * Java Flight Recorder event for the step currently being performed, and
+	 * whether the step has passed so far
+	 */
+	TestStepEvent stepEvent;
+	boolean stepPassed;
+
 	/**
 	 * Verify searching the store for products, checking that they contain expected
 	 * text, and can be added and removed from the shopping cart.
@@ -56,122 +173,468 @@ public class WebstaurantStoreTests {
 
 		int numberOfResultsReturned = 0;
 		int numberOfResultsProcessed = 0;
+		int numberOfFailedItems = 0;
 		WebElement lastItemBox = null;
 		String linkDescription = null;
 		boolean doneProcessingResults = false;
-		String stepDescr = null;
-		SoftAssert softAssert = new SoftAssert();
+		testName = "verifyProductSearchAndCart-" + searchText;
+		stepDescr = null;
+		// save failure artifacts (screenshot, DOM, console log) for the step at each
+		// failed soft assertion, including the one made for unhandled exceptions
+		SoftAssert softAssert = new SoftAssert() {
+			@Override
+			public void onAssertFailure(IAssert<?> assertCommand, AssertionError ex) {
+				stepPassed = false;
+				FAILURE_ARTIFACTS.capture(driver, browser, testName, stepDescr, ex.getMessage());
+			}
+		};
+		// the item results file is a by-product, so the test runs without it if it
+		// can't be opened
+		ItemResultWriter itemResults = null;
+		try {
+			itemResults = new ItemResultWriter(ITEM_RESULTS_FILE, searchText, 50);
+		} catch (IOException e) {
+			Reporter.log("Warning: The item results file could not be opened, so item results won't be written (file="
+					+ ITEM_RESULTS_FILE + "): " + e.getMessage());
+		}
+		String accessoriesPolicyWarning = AccessoriesDialog.findPolicyWarning();
+		if (addAccessories && accessoriesPolicyWarning != null) {
+			Reporter.log("Warning: " + accessoriesPolicyWarning);
+		}
 
 		try {
-			stepDescr = "Open the browser (browser=" + browser + ", maximized=" + maximizeBrowser + ", headless="
-					+ headless + ").";
+			startStep("Check that no locators were found broken by an earlier test in this run.");
+			requireCheckedLocatorsResolve();
+
+			startStep("Wait for the site to be healthy, if it has been found degraded (environment=" + environment
+					+ ").");
+			SiteHealthMonitor.awaitHealthy(StoreHomePage.getHealthProbeUrl(environment),
+					SITE_RECOVERY_MAX_WAIT_MILLISECONDS);
+
+			startStep("Open the browser (browser=" + browser + ", maximized=" + maximizeBrowser + ", headless="
+					+ headless + ").");
 			driver = DriverFactory.createDriver(browser, maximizeBrowser, headless);
 
-			stepDescr = "Go to WebstaurantStore homepage (environment=" + environment + ").";
 			StoreHomePage homePage = new StoreHomePage(driver, environment);
-			homePage.go();
+			boolean restoredPreparedSession;
+			long setupStartTime = System.currentTimeMillis();
+
+			// the direct path skips the home page, so only once its locators are checked
+			boolean homeLocatorsChecked;
+			synchronized (UNRESOLVED_LOCATORS) {
+				homeLocatorsChecked = UNRESOLVED_LOCATORS.containsKey("home");
+			}
+			if (DIRECT_SEARCH && homeLocatorsChecked) {
+				startStep("Go directly to the search results, restoring the prepared session if there is one"
+						+ " (environment=" + environment + ", search text='" + searchText + "', layout="
+						+ gridOrListView + ").");
+				restoredPreparedSession = homePage.goToSearchResultsFromPreparedSession(searchText, gridOrListView);
+			} else {
+				startStep("Go to WebstaurantStore homepage, restoring the prepared session if there is one (environment="
+						+ environment + ").");
+				restoredPreparedSession = homePage.goFromPreparedSession();
 
-			stepDescr = "Search products (search text='" + searchText + "').";
-			homePage.searchProducts(searchText);
+				startStep("Check that the home page's locators resolve (checked once per run).");
+				synchronized (UNRESOLVED_LOCATORS) {
+					if (!UNRESOLVED_LOCATORS.containsKey("home")) {
+						UNRESOLVED_LOCATORS.put("home", homePage.findUnresolvedHomePageLocators());
+					}
+				}
+				requireLocatorsResolve("home");
 
-			stepDescr = "Select grid or list view for the results layout (layout=" + gridOrListView + ").";
-			homePage.setResultsLayout(gridOrListView);
+				if (DriverFactory.supports(browser, DriverFeature.PAGE_TIMING)) {
+					startStep("Check the home page's load timing against its performance budget.");
+					checkPagePerformance(softAssert, "home", homePage.findPageTiming());
+				}
+
+				startStep("Search products (search text='" + searchText + "').");
+				homePage.searchProducts(searchText);
+
+				startStep("Select grid or list view for the results layout, unless the restored session already has it"
+						+ " (layout=" + gridOrListView + ").");
+				homePage.ensureResultsLayout(gridOrListView);
+			}
+
+			// measures what restoring the prepared session saves, in the performance summary
+			PAGE_PERFORMANCE.record(
+					"search setup " + (restoredPreparedSession ? "(restored session)" : "(fresh session)"),
+					System.currentTimeMillis() - setupStartTime, true);
+
+			startStep("Check that the search results page's locators resolve (checked once per run).");
+			synchronized (UNRESOLVED_LOCATORS) {
+				if (!UNRESOLVED_LOCATORS.containsKey("search")) {
+					UNRESOLVED_LOCATORS.put("search", homePage.findUnresolvedSearchResultsLocators());
+				}
+			}
+			requireLocatorsResolve("search");
+
+			if (!restoredPreparedSession) {
+				startStep("Save the prepared browser session for later tests to restore.");
+				homePage.savePreparedSession();
+			}
 
 			// Loop through all of the pages of search results (or until maximum number of
 			// results to process is reached)
 			do {
-				stepDescr = "Get the parent boxes containing all of the products returned on this page of the search results.";
-				List<WebElement> resultBoxes = homePage.findAllResultItemBoxes();
-				numberOfResultsReturned = resultBoxes.size();
+				startStep("Fingerprint this page of search results to check whether it already passed validation (page="
+						+ homePage.getPageNumber() + ").");
+				List<String> pageSignatures = homePage.findResultItemSignatures();
+				String pageFingerprint = pageSignatures.isEmpty() ? null
+						: ValidationFingerprintCache.fingerprint(pageSignatures);
+				String pageCacheKey = ValidationFingerprintCache.buildKey(environment, searchText, resultsExpectedText,
+						String.valueOf(homePage.getPageNumber()));
+				int failedItemsBeforePage = numberOfFailedItems;
+
+				if (DriverFactory.supports(browser, DriverFeature.PAGE_TIMING)) {
+					startStep("Check this page of search results' load timing against its performance budget (page="
+							+ homePage.getPageNumber() + ").");
+					checkPagePerformance(softAssert, "search", homePage.findPageTiming());
+				}
 
-				stepDescr = "Confirm that the number of returned results meets the expected minimum (expected >= "
-						+ minResults + ", actual = " + numberOfResultsReturned + ").";
-				softAssert.assertTrue(numberOfResultsReturned >= minResults,
+				// the signatures cover every result on the page, so the page's total is known
+				// before its results are retrieved a chunk at a time
+				startStep("Confirm that the number of returned results meets the expected minimum (expected >= "
+						+ minResults + ", actual = " + pageSignatures.size() + ").");
+				softAssert.assertTrue(pageSignatures.size() >= minResults,
 						"The number of search results returned is less than the expected minimum (minimum=" + minResults
 								+ ", actual=" + numberOfResultsProcessed + ").");
 
-				// Loop through the results (parent boxes containing the items) on this page.";
-				for (WebElement box : resultBoxes) {
-
-					stepDescr = "Check if item's description contains the expected text (item "
-							+ (numberOfResultsProcessed + 1) + ", expected text='" + resultsExpectedText + "').";
-					boolean containsExpectedText = homePage.itemLinkContains(box, resultsExpectedText, true);
-					if (!containsExpectedText) {
-						linkDescription = homePage.findLinkTextInItemBox(box);
-						softAssert.assertTrue(false, "Item description '" + linkDescription + "' on page "
-								+ homePage.getPageNumber() + " does not contain '" + resultsExpectedText + "'.");
-					} else {
-						// keep track of the last matching item('s parent box)
-						lastItemBox = box;
+				if (SKIP_VALIDATED_PAGES && numberOfResultsProcessed + pageSignatures.size() < maxResultsToCheck
+						&& VALIDATED_PAGES.isValidated(pageCacheKey, pageFingerprint)) {
+					Reporter.log("Info: Page " + homePage.getPageNumber()
+							+ " is unchanged since it last passed validation, so its item checks are skipped (items="
+							+ pageSignatures.size() + ", fingerprint=" + pageFingerprint + ").");
+					numberOfResultsReturned = pageSignatures.size();
+					numberOfResultsProcessed += numberOfResultsReturned;
+
+					startStep("Get the last product on this previously validated page for the cart checks.");
+					List<WebElement> lastBoxOnPage = homePage.findResultItemBoxes(numberOfResultsReturned - 1, 1);
+					if (!lastBoxOnPage.isEmpty()) {
+						lastItemBox = lastBoxOnPage.get(0);
 					}
-					numberOfResultsProcessed++;
-
-					// break out of loop if we hit hit max number of results to process
-					if (numberOfResultsProcessed >= maxResultsToCheck) {
-						doneProcessingResults = true;
-						Reporter.log(
-								"Info: The maximum number of results was reached. No more results will be processed, but remaining tests will still be performed. (maximum results to check = "
-										+ maxResultsToCheck + ")");
-						break;
+				} else {
+					// Process the results on this page a chunk at a time so very large pages
+					// (high page size, "view all") don't have to be held and checked at once.
+					numberOfResultsReturned = 0;
+					List<WebElement> resultBoxes = null;
+					do {
+						startStep("Get the parent boxes containing the next chunk of products on this page of the search results (starting at result "
+								+ (numberOfResultsReturned + 1) + ").");
+						resultBoxes = homePage.findResultItemBoxes(numberOfResultsReturned, RESULT_CHUNK_SIZE);
+						numberOfResultsReturned += resultBoxes.size();
+
+						// Loop through the results (parent boxes containing the items) in this chunk.";
+						for (WebElement box : resultBoxes) {
+
+							startStep("Check if item's description contains the expected text (item "
+									+ (numberOfResultsProcessed + 1) + ", expected text='" + resultsExpectedText + "').");
+							long itemStartTime = System.currentTimeMillis();
+							linkDescription = homePage.findLinkTextInItemBox(box);
+							boolean containsExpectedText = StoreHomePage.descriptionContains(linkDescription,
+									resultsExpectedText, true);
+							if (itemResults != null) {
+								itemResults.write(homePage.getPageNumber(), numberOfResultsProcessed + 1,
+										linkDescription, containsExpectedText, System.currentTimeMillis() - itemStartTime);
+							}
+							if (!containsExpectedText) {
+								numberOfFailedItems++;
+								softAssert.assertTrue(false, "Item description '" + linkDescription + "' on page "
+										+ homePage.getPageNumber() + " does not contain '" + resultsExpectedText + "'.");
+							} else {
+								// keep track of the last matching item('s parent box)
+								lastItemBox = box;
+							}
+							numberOfResultsProcessed++;
+
+							// break out of loop if we hit hit max number of results to process
+							if (numberOfResultsProcessed >= maxResultsToCheck) {
+								doneProcessingResults = true;
+								Reporter.log(
+										"Info: The maximum number of results was reached. No more results will be processed, but remaining tests will still be performed. (maximum results to check = "
+												+ maxResultsToCheck + ")");
+								break;
+							}
+						}
+					} while (resultBoxes.size() == RESULT_CHUNK_SIZE && !doneProcessingResults);
+
+					// a chunk that never became visible ends the loop early, so make sure the
+					// rest of the page wasn't silently left unchecked
+					if (!doneProcessingResults) {
+						startStep("Confirm that every result on this page was checked (page=" + homePage.getPageNumber()
+								+ ", results=" + pageSignatures.size() + ", checked=" + numberOfResultsReturned + ").");
+						softAssert.assertEquals(numberOfResultsReturned, pageSignatures.size(),
+								"Not every search result on page " + homePage.getPageNumber()
+										+ " was found visible and checked.");
+					}
+
+					// only a fully checked page with no failures can be skipped next time
+					if (!doneProcessingResults && numberOfFailedItems == failedItemsBeforePage
+							&& numberOfResultsReturned == pageSignatures.size()) {
+						VALIDATED_PAGES.markValidated(pageCacheKey, pageFingerprint);
+					} else if (numberOfFailedItems > failedItemsBeforePage) {
+						VALIDATED_PAGES.invalidate(pageCacheKey);
 					}
 				}
 
-				stepDescr = "Go to the next page if the last page or maximum number of results have not been reached";
+				startStep("Go to the next page if the last page or maximum number of results have not been reached");
 				try {
 					doneProcessingResults |= homePage.isLastPage();
 
 					if (!doneProcessingResults) {
 						homePage.goToNextPage();
 					}
+				} catch (SiteDegradedException e) {
+					throw e;
 				} catch (Exception e) {
 					softAssert.assertTrue(false, "Failed to go to the next page.");
 				}
 			} while (!doneProcessingResults);
 
-			String lastItemDescription = homePage.findLinkTextInItemBox(lastItemBox);
+			if (!DriverFactory.supports(browser, DriverFeature.ADD_TO_CART)) {
+				Reporter.log("Info: The cart steps are skipped, because browser '" + browser
+						+ "' doesn't support them (search results were still checked).");
+			} else {
+				String lastItemDescription = homePage.findLinkTextInItemBox(lastItemBox);
 
-			stepDescr = "Add the last item to the cart (item description = '" + lastItemDescription + ").";
-			boolean addedToCart = homePage.addItemInBoxToCart(lastItemBox, addAccessories);
-			softAssert.assertTrue(addedToCart, "Nothing was added to the cart (count of items did not increase).");
+				startStep("Add the last item to the cart (item description = '" + lastItemDescription + ").");
+				// the accessories dialog only appears for some items, so its locators are
+				// checked the first time it appears in the run
+				boolean checkAccessoriesLocators;
+				synchronized (UNRESOLVED_LOCATORS) {
+					checkAccessoriesLocators = !UNRESOLVED_LOCATORS.containsKey("accessories");
+				}
+				boolean addedToCart = homePage.addItemInBoxToCart(lastItemBox, addAccessories,
+						checkAccessoriesLocators);
+				List<String> unresolvedAccessoriesLocators = homePage.getUnresolvedAccessoriesDialogLocators();
+				if (unresolvedAccessoriesLocators != null) {
+					startStep("Check that the accessories dialog's locators resolve (checked the first time it appears"
+							+ " in the run).");
+					synchronized (UNRESOLVED_LOCATORS) {
+						if (!UNRESOLVED_LOCATORS.containsKey("accessories")) {
+							UNRESOLVED_LOCATORS.put("accessories", unresolvedAccessoriesLocators);
+						}
+					}
+					requireLocatorsResolve("accessories");
+				}
+				softAssert.assertTrue(addedToCart,
+						"Nothing was added to the cart (count of items did not increase).");
 
-			// Handling the "...item was added to your cart dialog that appears briefly
-			// could be unstable or brittle, because we don't know if it will be there once
-			// we spend time checking for other prompts and it will block clicks while it's
-			// up. Instead, just close it if it's there and then check the cart.
-			stepDescr = "If a popup appears saying the item was added to your cart, close it if it's not already gone.";
-			homePage.tryClickAddedToYourCartCloseButton();
+				// Handling the "...item was added to your cart dialog that appears briefly
+				// could be unstable or brittle, because we don't know if it will be there once
+				// we spend time checking for other prompts and it will block clicks while it's
+				// up. Instead, just close it if it's there and then check the cart.
+				startStep("If a popup appears saying the item was added to your cart, close it if it's not already gone.");
+				homePage.tryClickAddedToYourCartCloseButton();
 
-			stepDescr = "Click into the cart (internally, a new page object will be created for this test to use).";
-			homePage.clickIntoCart();
-			CartPage cartPage = new CartPage(driver);
+				startStep("Click into the cart (internally, a new page object will be created for this test to use).");
+				homePage.clickIntoCart();
+				CartPage cartPage = new CartPage(driver);
 
-			stepDescr = "Confirm that the item with the correct description is found in the cart (description='"
-					+ lastItemDescription + "').";
-			boolean foundItemInCart = cartPage.itemWithDescriptionIsInCart(lastItemDescription);
-			softAssert.assertTrue(foundItemInCart,
-					"Item with description '" + lastItemDescription + "' was not found in the cart.");
+				startStep("Check that the cart page's locators resolve (checked once per run).");
+				synchronized (UNRESOLVED_LOCATORS) {
+					if (!UNRESOLVED_LOCATORS.containsKey("cart")) {
+						UNRESOLVED_LOCATORS.put("cart", cartPage.findUnresolvedLocators());
+					}
+				}
+				requireLocatorsResolve("cart");
 
-			stepDescr = "Empty the cart using the Empty Cart button and the additional Empty Cart button in the confirmation dialog.";
-			softAssert.assertTrue(cartPage.emptyCart(), "Failed to empty the cart.");
+				startStep("Confirm that the item with the correct description is found in the cart (description='"
+						+ lastItemDescription + "').");
+				boolean foundItemInCart = cartPage.itemWithDescriptionIsInCart(lastItemDescription);
+				softAssert.assertTrue(foundItemInCart,
+						"Item with description '" + lastItemDescription + "' was not found in the cart.");
 
+				if (DriverFactory.supports(browser, DriverFeature.PAGE_TIMING)) {
+					startStep("Check the cart page's load timing against its performance budget.");
+					checkPagePerformance(softAssert, "cart", cartPage.findPageTiming());
+				}
+
+				if (FAST_CART_RESET) {
+					startStep("Reset the cart by clearing the browser session's cookies and storage, then reload and"
+							+ " check that the cart count is zero.");
+					softAssert.assertTrue(cartPage.resetCart(),
+							"Failed to reset the cart (the cart count isn't zero after clearing the session).");
+				} else {
+					startStep("Empty the cart using the Empty Cart button and the additional Empty Cart button in the confirmation dialog.");
+					softAssert.assertTrue(cartPage.emptyCart(), "Failed to empty the cart.");
+				}
+			}
 		} catch (Exception e) {
 			softAssert.assertTrue(false,
 					"An unhandled exception occured during step, '" + stepDescr + "': " + e.getMessage());
 			e.printStackTrace();
+		} finally {
+			endStep();
+			// each row of the data provider creates its own driver, so each must quit it
+			// (giving its grid slot back, on a grid)
+			quitDriver();
+			try {
+				VALIDATED_PAGES.save();
+			} catch (IOException e) {
+				Reporter.log("Warning: The validated page fingerprints could not be saved: " + e.getMessage());
+			}
+			if (itemResults != null) {
+				try {
+					itemResults.close();
+				} catch (IOException e) {
+					Reporter.log("Warning: Some item results could not be written to " + ITEM_RESULTS_FILE + ": "
+							+ e.getMessage());
+				}
+			}
 		}
 		softAssert.assertAll();
 	}
 
 	@AfterTest
 	public void afterClass() {
+		writeWaitDiagnosticsReport();
+		writeReport("Page performance (per page and metric; failed = over budget)", PAGE_PERFORMANCE.report(),
+				System.getProperty("pagePerformance.file", "target/page-performance.txt"));
+
+		if (!FAILURE_ARTIFACTS.flush(30000) || FAILURE_ARTIFACTS.getDroppedCount() > 0) {
+			Reporter.log("Warning: Not all failure artifacts were saved (dropped="
+					+ FAILURE_ARTIFACTS.getDroppedCount() + ").");
+		}
+
+		// tests quit their own drivers; this is just a final check
+		quitDriver();
+	}
+
+	/**
+	 * Quits the test's driver, if it has one that hasn't been quit.
+	 */
+	private void quitDriver() {
+		if (driver == null) {
+			return;
+		}
+
 		try {
-			if (driver != null && !driver.getWindowHandles().isEmpty()) {
-				driver.close();
-				driver.quit();
+			driver.quit();
+		} catch (WebDriverException e) {
+			// the session may already be gone, which is what quitting is for anyway
+		} finally {
+			driver = null;
+		}
+	}
+
+	/**
+	 * Stops the test right away if any of a page's registered locators didn't
+	 * resolve when the page was checked, instead of letting a broken locator wait
+	 * out its full timeout later.
+	 * 
+	 * @param page the page name the locators were checked under
+	 * @throws IllegalStateException if any locators didn't resolve
+	 */
+	private void requireLocatorsResolve(String page) {
+		List<String> unresolved;
+		synchronized (UNRESOLVED_LOCATORS) {
+			unresolved = UNRESOLVED_LOCATORS.get(page);
+		}
+
+		if (unresolved != null && !unresolved.isEmpty()) {
+			throw new IllegalStateException("Locators not found on the " + page + " page: " + unresolved);
+		}
+	}
+
+	/**
+	 * Stops the test right away if any page checked so far in the run has broken
+	 * locators, since the test would reach that page too.
+	 * 
+	 * @throws IllegalStateException if any checked page's locators didn't resolve
+	 */
+	private void requireCheckedLocatorsResolve() {
+		List<String> pages;
+		synchronized (UNRESOLVED_LOCATORS) {
+			pages = new ArrayList<String>(UNRESOLVED_LOCATORS.keySet());
+		}
+
+		for (String page : pages) {
+			requireLocatorsResolve(page);
+		}
+	}
+
+	/**
+	 * Starts a new test step, ending the previous one. The step description is
+	 * used in failure messages and artifacts, and each step is emitted as a Java
+	 * Flight Recorder {@link TestStepEvent}.
+	 * 
+	 * @param description the description of the step
+	 */
+	private void startStep(String description) {
+		endStep();
+		stepDescr = description;
+		stepPassed = true;
+		stepEvent = new TestStepEvent();
+		stepEvent.begin();
+	}
+
+	/**
+	 * Ends the current test step, if there is one, and commits its event.
+	 */
+	private void endStep() {
+		if (stepEvent != null) {
+			stepEvent.end();
+			if (stepEvent.shouldCommit()) {
+				stepEvent.test = testName;
+				stepEvent.step = stepDescr;
+				stepEvent.passed = stepPassed;
+				stepEvent.commit();
+			}
+			stepEvent = null;
+		}
+	}
+
+	/**
+	 * Writes the per-locator wait timing collected during the run, sorted by time
+	 * lost to timeouts, to the file in the waitDiagnostics.file system property
+	 * (target/wait-diagnostics.txt by default) and the TestNG report.
+	 */
+	private void writeWaitDiagnosticsReport() {
+		writeReport("Wait diagnostics (per locator, most time lost to timeouts first)", WaitDiagnostics.report(),
+				System.getProperty("waitDiagnostics.file", "target/wait-diagnostics.txt"));
+	}
+
+	/**
+	 * Writes a run report to a file and the TestNG report.
+	 * 
+	 * @param title    the report title
+	 * @param report   the report text
+	 * @param filePath the file to write
+	 */
+	private void writeReport(String title, String report, String filePath) {
+		Reporter.log(title + ":\n" + report);
+
+		File reportFile = new File(filePath);
+		try {
+			if (reportFile.getAbsoluteFile().getParentFile() != null) {
+				reportFile.getAbsoluteFile().getParentFile().mkdirs();
 			}
-		} catch (WebDriverException e) // TODO:
-		{
-			// this is just a final check, we don't want it to throw an exception
+			Files.write(reportFile.toPath(), report.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			Reporter.log("Warning: The report could not be written to " + reportFile + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Records a page's load timing in the run's page performance summary and
+	 * fails a soft assertion for each metric that is over the page's budget (see
+	 * {@link PerformanceBudget}).
+	 * 
+	 * @param softAssert the test's soft assertions
+	 * @param page       the page name the budgets are configured for
+	 * @param timing     the page's timing
+	 */
+	private void checkPagePerformance(SoftAssert softAssert, String page, PageTiming timing) {
+		for (String metric : PerformanceBudget.getMetrics()) {
+			long actual = timing.get(metric);
+			if (actual >= 0) {
+				long budget = PerformanceBudget.getBudget(page, metric);
+				PAGE_PERFORMANCE.record(page + " " + metric, actual, budget <= 0 || actual <= budget);
+			}
+		}
+
+		for (String violation : PerformanceBudget.findViolations(page, timing)) {
+			softAssert.assertTrue(false, violation);
 		}
 	}
 }
@@ -0,0 +1,34 @@
+package bryankier.testframework;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the browser engine feature table in
+ * {@link DriverFactory#supports(String, DriverFeature)}.
+ */
+public class DriverFactoryTests {
+
+	@Test
+	public void chromeSupportsEveryFeature() {
+		for (DriverFeature feature : DriverFeature.values()) {
+			Assert.assertTrue(DriverFactory.supports("chrome", feature), feature.name());
+			Assert.assertTrue(DriverFactory.supports("Remote-Chrome", feature), feature.name());
+		}
+	}
+
+	@Test
+	public void htmlUnitSupportsNoFeatures() {
+		for (DriverFeature feature : DriverFeature.values()) {
+			Assert.assertFalse(DriverFactory.supports("htmlunit", feature), feature.name());
+		}
+	}
+
+	@Test
+	public void unhandledBrowsersSupportNothing() {
+		Assert.assertNull(DriverFactory.getEngine("remote-firefox"));
+		Assert.assertNull(DriverFactory.getEngine("firefox"));
+		Assert.assertNull(DriverFactory.getEngine(null));
+		Assert.assertFalse(DriverFactory.supports("firefox", DriverFeature.SCREENSHOTS));
+	}
+}
@@ -0,0 +1,80 @@
+package bryankier.testframework;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import bryankier.testframework.GridSessionDistributor.Endpoint;
+
+/**
+ * Tests parsing the grid.urls endpoints and hub status in
+ * {@link GridSessionDistributor}.
+ */
+public class GridSessionDistributorTests {
+
+	@Test
+	public void parsesUrlsAndMaximums() {
+		List<Endpoint> endpoints = GridSessionDistributor
+				.parseEndpoints("http://node1:4444/wd/hub|10, http://node2:4444/wd/hub ,,http://node3/wd/hub | 2");
+
+		Assert.assertEquals(endpoints.size(), 3);
+		Assert.assertEquals(endpoints.get(0).url.toString(), "http://node1:4444/wd/hub");
+		Assert.assertEquals(endpoints.get(0).maxSessions, 10);
+		Assert.assertEquals(endpoints.get(1).url.toString(), "http://node2:4444/wd/hub");
+		Assert.assertEquals(endpoints.get(1).maxSessions, GridSessionDistributor.DEFAULT_MAX_SESSIONS);
+		Assert.assertEquals(endpoints.get(2).url.toString(), "http://node3/wd/hub");
+		Assert.assertEquals(endpoints.get(2).maxSessions, 2);
+	}
+
+	@Test
+	public void keepsQueryStrings() {
+		List<Endpoint> endpoints = GridSessionDistributor
+				.parseEndpoints("http://host/wd/hub?x=1,http://host/wd/hub?a=b&c=2|3");
+
+		Assert.assertEquals(endpoints.get(0).url.toString(), "http://host/wd/hub?x=1");
+		Assert.assertEquals(endpoints.get(0).maxSessions, GridSessionDistributor.DEFAULT_MAX_SESSIONS);
+		Assert.assertEquals(endpoints.get(1).url.toString(), "http://host/wd/hub?a=b&c=2");
+		Assert.assertEquals(endpoints.get(1).maxSessions, 3);
+	}
+
+	@Test
+	public void parsesDefault() {
+		List<Endpoint> endpoints = GridSessionDistributor.parseEndpoints(GridSessionDistributor.DEFAULT_GRID_URLS);
+
+		Assert.assertEquals(endpoints.size(), 1);
+		Assert.assertEquals(endpoints.get(0).url.toString(), "http://localhost:4444/wd/hub");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsInvalidMaximum() {
+		GridSessionDistributor.parseEndpoints("http://host/wd/hub|many");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsZeroMaximum() {
+		GridSessionDistributor.parseEndpoints("http://host/wd/hub|0");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsInvalidUrl() {
+		GridSessionDistributor.parseEndpoints("node1:4444/wd/hub");
+	}
+
+	@Test
+	public void parsesHubFreeSlots() {
+		Assert.assertEquals(GridSessionDistributor.parseFreeSlots("{\"slotCounts\": {\"free\": 3, \"total\": 10}}"),
+				Integer.valueOf(3));
+		Assert.assertNull(GridSessionDistributor.parseFreeSlots("{\"status\": 0}"));
+	}
+
+	@Test
+	public void reservesOnlyUpToMaximum() {
+		Endpoint endpoint = GridSessionDistributor.parseEndpoints("http://host/wd/hub|2").get(0);
+
+		Assert.assertTrue(endpoint.tryReserveSlot());
+		Assert.assertTrue(endpoint.tryReserveSlot());
+		Assert.assertFalse(endpoint.tryReserveSlot());
+		Assert.assertEquals(endpoint.activeSessions.get(), 2);
+	}
+}
@@ -0,0 +1,64 @@
+package bryankier.testframework;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the JSON lines written by {@link ItemResultWriter}.
+ */
+public class ItemResultWriterTests {
+
+	@Test
+	public void escapesDescriptions() throws IOException {
+		File file = File.createTempFile("item-results", ".jsonl");
+		try {
+			try (ItemResultWriter writer = new ItemResultWriter(file.getPath(), "run \"1\"", 10)) {
+				writer.write(2, 7, "12\" \\ Pan\n\tLid\u0001\u00e9", true, 15);
+				writer.write(2, 8, null, false, 3);
+			}
+
+			List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+			Assert.assertEquals(lines.size(), 2);
+			Assert.assertEquals(stripTimestamp(lines.get(0)), "\"run\":\"run \\\"1\\\"\",\"page\":2,\"index\":7,"
+					+ "\"description\":\"12\\\" \\\\ Pan\\n\\tLid\\u0001\u00e9\",\"matched\":true,\"durationMs\":15}");
+			Assert.assertEquals(stripTimestamp(lines.get(1)),
+					"\"run\":\"run \\\"1\\\"\",\"page\":2,\"index\":8,\"description\":null,\"matched\":false,\"durationMs\":3}");
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void writesAllRecordsInOrderAcrossBatches() throws IOException {
+		File file = File.createTempFile("item-results", ".jsonl");
+		try {
+			try (ItemResultWriter writer = new ItemResultWriter(file.getPath(), "run", 3)) {
+				for (int i = 1; i <= 10; i++) {
+					writer.write(1, i, "item " + i, true, 1);
+				}
+			}
+
+			List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+			Assert.assertEquals(lines.size(), 10);
+			for (int i = 1; i <= 10; i++) {
+				Assert.assertTrue(lines.get(i - 1).contains("\"index\":" + i + ","), lines.get(i - 1));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * @return the record after its timestamp field, which changes every run
+	 */
+	private static String stripTimestamp(String line) {
+		Assert.assertTrue(line.matches("\\{\"timestamp\":\\d+,.*"), line);
+		return line.substring(line.indexOf(',') + 1);
+	}
+}
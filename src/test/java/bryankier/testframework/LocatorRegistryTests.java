@@ -0,0 +1,128 @@
+package bryankier.testframework;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the XPath to CSS translation in {@link LocatorRegistry#compile(By)},
+ * both the selectors it produces and that they find the same elements as the
+ * XPath they replace.
+ */
+public class LocatorRegistryTests {
+
+	private static final String PAGE = "<html><body>"
+			+ "<div role='dialog' aria-modal='true' id='d1'>"
+			+ "  <button name='x' id='b1'>Add To Cart</button>"
+			+ "  <span><button name='x' id='b2'>Other</button></span>"
+			+ "  <select name='accessories' id='s1'></select>"
+			+ "</div>"
+			+ "<div role='dialog' id='d2'><button name='x' id='b3'>Modal</button></div>"
+			+ "<div class='notification__content extra' id='n1'></div>"
+			+ "<div class='notification__content' id='n2'><a data-testid='itemDescription' id='a1'>Item</a></div>"
+			+ "<div id='outer' class='box'><div id='inner' class='box'><a data-testid='itemDescription' id='a2'>Item</a></div></div>"
+			+ "</body></html>";
+
+	private HtmlUnitDriver driver;
+	private File page;
+
+	@BeforeClass
+	public void openPage() throws IOException {
+		page = File.createTempFile("locator-registry", ".html");
+		Files.write(page.toPath(), PAGE.getBytes(StandardCharsets.UTF_8));
+		driver = new HtmlUnitDriver();
+		driver.get(page.toURI().toString());
+	}
+
+	@AfterClass(alwaysRun = true)
+	public void closePage() {
+		if (driver != null) {
+			driver.quit();
+		}
+		if (page != null) {
+			page.delete();
+		}
+	}
+
+	@DataProvider(name = "compiledXpaths")
+	public Object[][] compiledXpaths() {
+		return new Object[][] {
+				{ "//div[@role='dialog']", "div[role='dialog']" },
+				{ "//div[@role='dialog'][@aria-modal='true']", "div[role='dialog'][aria-modal='true']" },
+				{ "//div[@role='dialog']/button[@name='x']", "div[role='dialog'] > button[name='x']" },
+				{ "//div[@role='dialog']//button[@name='x']", "div[role='dialog'] button[name='x']" },
+				{ "//div[@class='notification__content']", "div[class='notification__content']" },
+				{ "//*[@id='b1']", "*[id='b1']" },
+				{ ".//a[@data-testid='itemDescription']", "a[data-testid='itemDescription']" } };
+	}
+
+	@Test(dataProvider = "compiledXpaths")
+	public void compilesSimpleXpathToCss(String xpath, String expectedCss) {
+		Assert.assertEquals(LocatorRegistry.compile(By.xpath(xpath)), By.cssSelector(expectedCss));
+	}
+
+	@DataProvider(name = "uncompiledLocators")
+	public Object[][] uncompiledLocators() {
+		return new Object[][] {
+				{ By.xpath("//button[text()='Search']") },
+				{ By.xpath("//div[@class='notification__content']/../button[@class='close']") },
+				{ By.xpath("//div[@role='dialog'][2]") },
+				{ By.xpath("//div[contains(@class,'box')]") },
+				{ By.xpath("//div[@role='dialog'][.//select[@name='accessories']]") },
+				{ By.xpath("//div[@role=\"dialog\"]") },
+				{ By.xpath("/html/body/div") },
+				{ By.xpath("div[@role='dialog']") },
+				{ By.xpath(".//div[@class='box']/a[@data-testid='itemDescription']") },
+				{ By.xpath(".//div[@class='box']//a") },
+				{ By.id("b1") },
+				{ By.linkText("Item") },
+				{ By.cssSelector("div > button") } };
+	}
+
+	@Test(dataProvider = "uncompiledLocators")
+	public void leavesOtherLocatorsAsIs(By locator) {
+		Assert.assertSame(LocatorRegistry.compile(locator), locator);
+	}
+
+	@Test(dataProvider = "compiledXpaths")
+	public void compiledCssFindsSameElementsAsXpath(String xpath, String expectedCss) {
+		if (xpath.startsWith(".")) {
+			assertSameElements(driver.findElement(By.id("n2")).findElements(By.xpath(xpath)),
+					driver.findElement(By.id("n2")).findElements(LocatorRegistry.compile(By.xpath(xpath))));
+		} else {
+			assertSameElements(driver.findElements(By.xpath(xpath)),
+					driver.findElements(LocatorRegistry.compile(By.xpath(xpath))));
+		}
+	}
+
+	@Test
+	public void relativeXpathFindsOnlyInsideParent() {
+		WebElement inner = driver.findElement(By.id("inner"));
+		By xpath = By.xpath(".//div[@class='box']//a");
+
+		// the XPath's div must be inside the parent; as a CSS selector it would match
+		// the parent itself, which is why multi-step relative paths aren't compiled
+		Assert.assertTrue(inner.findElements(xpath).isEmpty());
+		Assert.assertEquals(inner.findElements(By.cssSelector("div[class='box'] a")).size(), 1);
+		Assert.assertSame(LocatorRegistry.compile(xpath), xpath);
+	}
+
+	private static void assertSameElements(List<WebElement> expected, List<WebElement> actual) {
+		Assert.assertFalse(expected.isEmpty(), "The XPath should find something on the test page.");
+		Assert.assertEquals(actual.size(), expected.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(actual.get(i).getAttribute("id"), expected.get(i).getAttribute("id"));
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package bryankier.testframework;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests when {@link SiteHealthMonitor#record(boolean, String)} opens the
+ * circuit, with the default window of 50, minimum of 10 samples and failure
+ * rate of 0.5.
+ */
+public class SiteHealthMonitorTests {
+
+	@BeforeMethod
+	@AfterMethod(alwaysRun = true)
+	public void resetMonitor() {
+		SiteHealthMonitor.setEnabled(true);
+		SiteHealthMonitor.reset();
+	}
+
+	@Test
+	public void staysClosedUntilMinimumSamples() {
+		for (int i = 1; i < SiteHealthMonitor.MIN_SAMPLES; i++) {
+			SiteHealthMonitor.record(false, "find " + i);
+			Assert.assertFalse(SiteHealthMonitor.isOpen(), "Open after " + i + " failures");
+		}
+
+		SiteHealthMonitor.record(false, "find " + SiteHealthMonitor.MIN_SAMPLES);
+		Assert.assertTrue(SiteHealthMonitor.isOpen());
+	}
+
+	@Test
+	public void opensAtFailureRateOfFullWindow() {
+		for (int i = 0; i < SiteHealthMonitor.WINDOW_SIZE; i++) {
+			SiteHealthMonitor.record(true, "find");
+		}
+
+		// each failure replaces a success in the window, so half the window has to
+		// fail
+		int failuresToOpen = (int) Math.ceil(SiteHealthMonitor.FAILURE_RATE * SiteHealthMonitor.WINDOW_SIZE);
+		for (int i = 1; i < failuresToOpen; i++) {
+			SiteHealthMonitor.record(false, "find");
+			Assert.assertFalse(SiteHealthMonitor.isOpen(), "Open after " + i + " failures");
+		}
+
+		SiteHealthMonitor.record(false, "find");
+		Assert.assertTrue(SiteHealthMonitor.isOpen());
+	}
+
+	@Test
+	public void failuresLeavingWindowStopCounting() {
+		int failuresToOpen = (int) Math.ceil(SiteHealthMonitor.FAILURE_RATE * SiteHealthMonitor.WINDOW_SIZE);
+		for (int i = 0; i < SiteHealthMonitor.WINDOW_SIZE; i++) {
+			SiteHealthMonitor.record(true, "find");
+		}
+		for (int i = 1; i < failuresToOpen; i++) {
+			SiteHealthMonitor.record(false, "find");
+		}
+
+		// a full window of successes pushes the earlier failures out
+		for (int i = 0; i < SiteHealthMonitor.WINDOW_SIZE; i++) {
+			SiteHealthMonitor.record(true, "find");
+		}
+		for (int i = 1; i < failuresToOpen; i++) {
+			SiteHealthMonitor.record(false, "find");
+		}
+		Assert.assertFalse(SiteHealthMonitor.isOpen());
+
+		SiteHealthMonitor.record(false, "find");
+		Assert.assertTrue(SiteHealthMonitor.isOpen());
+	}
+
+	@Test
+	public void disabledMonitorNeverOpens() {
+		SiteHealthMonitor.setEnabled(false);
+		for (int i = 0; i < SiteHealthMonitor.WINDOW_SIZE; i++) {
+			SiteHealthMonitor.record(false, "find");
+		}
+		Assert.assertFalse(SiteHealthMonitor.isOpen());
+
+		SiteHealthMonitor.setEnabled(true);
+		SiteHealthMonitor.record(false, "find");
+		Assert.assertFalse(SiteHealthMonitor.isOpen());
+	}
+}
@@ -0,0 +1,35 @@
+package bryankier.testframework;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the nearest-rank percentiles in {@link StepLatencyStats}.
+ */
+public class StepLatencyStatsTests {
+
+	@Test
+	public void percentilesUseNearestRank() {
+		List<Long> sorted = Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+
+		Assert.assertEquals(StepLatencyStats.percentile(sorted, 0), 1);
+		Assert.assertEquals(StepLatencyStats.percentile(sorted, 50), 5);
+		Assert.assertEquals(StepLatencyStats.percentile(sorted, 90), 9);
+		Assert.assertEquals(StepLatencyStats.percentile(sorted, 91), 10);
+		Assert.assertEquals(StepLatencyStats.percentile(sorted, 99), 10);
+		Assert.assertEquals(StepLatencyStats.percentile(sorted, 100), 10);
+	}
+
+	@Test
+	public void percentilesOfOneValueAreThatValue() {
+		List<Long> sorted = Collections.singletonList(42L);
+
+		Assert.assertEquals(StepLatencyStats.percentile(sorted, 0), 42);
+		Assert.assertEquals(StepLatencyStats.percentile(sorted, 50), 42);
+		Assert.assertEquals(StepLatencyStats.percentile(sorted, 99), 42);
+	}
+}
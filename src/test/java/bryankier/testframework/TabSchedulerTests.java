@@ -0,0 +1,114 @@
+package bryankier.testframework;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+
+/**
+ * Tests how {@link TabScheduler#run(List, long)} reports scenarios, using an
+ * HtmlUnit session.
+ */
+public class TabSchedulerTests {
+
+	private HtmlUnitDriver driver;
+	private File page;
+
+	@BeforeMethod
+	public void openBrowser() throws IOException {
+		// opening tabs runs a script, which needs a loaded page
+		page = File.createTempFile("tab-scheduler", ".html");
+		Files.write(page.toPath(), "<html><body></body></html>".getBytes(StandardCharsets.UTF_8));
+		driver = new HtmlUnitDriver(BrowserVersion.CHROME, true);
+		driver.get(page.toURI().toString());
+	}
+
+	@AfterMethod(alwaysRun = true)
+	public void closeBrowser() {
+		if (driver != null) {
+			driver.quit();
+		}
+		if (page != null) {
+			page.delete();
+		}
+	}
+
+	@Test
+	public void reportsEachScenarioError() throws InterruptedException {
+		final IllegalStateException failure = new IllegalStateException("scenario failed");
+		List<TabScheduler.TabScenario> scenarios = new ArrayList<TabScheduler.TabScenario>();
+		scenarios.add(new TabScheduler.TabScenario() {
+			public void run(WebDriver tabDriver) {
+				tabDriver.getWindowHandle();
+			}
+		});
+		scenarios.add(new TabScheduler.TabScenario() {
+			public void run(WebDriver tabDriver) {
+				throw failure;
+			}
+		});
+
+		List<Throwable> errors = new TabScheduler(driver).run(scenarios, 30);
+
+		Assert.assertNull(errors.get(0));
+		Assert.assertSame(errors.get(1), failure);
+	}
+
+	@Test
+	public void stopsScenariosThatTimeOut() throws InterruptedException {
+		final AtomicInteger commandsAfterRun = new AtomicInteger();
+		final CountDownLatch scenarioStopped = new CountDownLatch(1);
+		final Object runOver = new Object();
+		final boolean[] returned = { false };
+
+		List<TabScheduler.TabScenario> scenarios = new ArrayList<TabScheduler.TabScenario>();
+		scenarios.add(new TabScheduler.TabScenario() {
+			public void run(WebDriver tabDriver) {
+			}
+		});
+		scenarios.add(new TabScheduler.TabScenario() {
+			public void run(WebDriver tabDriver) {
+				// ignores interrupts, like a scenario stuck in a driver call
+				while (true) {
+					try {
+						tabDriver.getWindowHandle();
+						synchronized (runOver) {
+							if (returned[0]) {
+								commandsAfterRun.incrementAndGet();
+							}
+						}
+					} catch (WebDriverException e) {
+						scenarioStopped.countDown();
+						return;
+					}
+				}
+			}
+		});
+
+		List<Throwable> errors = new TabScheduler(driver).run(scenarios, 1);
+		synchronized (runOver) {
+			returned[0] = true;
+		}
+
+		Assert.assertNull(errors.get(0));
+		Assert.assertTrue(errors.get(1) instanceof TimeoutException, String.valueOf(errors.get(1)));
+		Assert.assertTrue(scenarioStopped.await(10, TimeUnit.SECONDS), "The scenario's next command didn't fail.");
+		Assert.assertEquals(commandsAfterRun.get(), 0);
+	}
+}
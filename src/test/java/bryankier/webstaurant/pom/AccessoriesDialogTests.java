@@ -0,0 +1,86 @@
+package bryankier.webstaurant.pom;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+
+/**
+ * Tests telling the accessories dialog apart from other modal dialogs, on local
+ * pages in HtmlUnit.
+ */
+public class AccessoriesDialogTests {
+
+	private static final String HIDDEN_SHELL = "<div role='dialog' aria-modal='true' style='display:none'>"
+			+ "<select name='accessories'><option value='h'>Hidden</option></select></div>";
+	private static final String CONSENT_DIALOG = "<div role='dialog' aria-modal='true' id='consent'>"
+			+ "<button onclick=\"document.title='consent'\">Add To Cart</button></div>";
+	private static final String ACCESSORIES_DIALOG = "<div role='dialog' aria-modal='true' id='accessories'>"
+			+ "<select name='accessories' id='first'><option value=''>Choose</option>"
+			+ "<option value='a1'>Lid $5.00</option><option value='a2'>Rack $2.50</option></select>"
+			+ "<button onclick=\"document.title='accessories'\">Add To Cart</button></div>";
+	private static final String ADDED_TO_CART = "<div class='notification__content'>Added to your cart</div>";
+
+	private HtmlUnitDriver driver;
+	private File page;
+
+	@AfterMethod(alwaysRun = true)
+	public void closePage() {
+		if (driver != null) {
+			driver.quit();
+		}
+		if (page != null) {
+			page.delete();
+		}
+	}
+
+	@Test
+	public void findsDialogAfterOtherModals() throws IOException {
+		AccessoriesDialog dialog = openPage(HIDDEN_SHELL + CONSENT_DIALOG + ACCESSORIES_DIALOG);
+
+		Assert.assertTrue(dialog.isShowing(2000));
+		Assert.assertTrue(dialog.findUnresolvedLocators().isEmpty(), dialog.findUnresolvedLocators().toString());
+	}
+
+	@Test
+	public void otherModalIsNotDialog() throws IOException {
+		AccessoriesDialog dialog = openPage(HIDDEN_SHELL + CONSENT_DIALOG + ADDED_TO_CART);
+
+		Assert.assertFalse(dialog.isShowing(2000));
+	}
+
+	@Test
+	public void confirmsOnlyAccessoriesDialog() throws IOException {
+		AccessoriesDialog dialog = openPage(CONSENT_DIALOG + ACCESSORIES_DIALOG);
+
+		Assert.assertEquals(dialog.selectOptionsAndConfirm(AccessoriesDialog.SelectionPolicy.CHEAPEST, ""), 1);
+		// HtmlUnit's driver doesn't see a value set by script, so read it in the page
+		Assert.assertEquals(driver.executeScript("return document.getElementById('first').value;"), "a2");
+		Assert.assertEquals(driver.getTitle(), "accessories");
+	}
+
+	@Test
+	public void doesNotConfirmOtherModal() throws IOException {
+		AccessoriesDialog dialog = openPage(CONSENT_DIALOG);
+
+		Assert.assertEquals(dialog.selectOptionsAndConfirm(AccessoriesDialog.SelectionPolicy.FIRST_AVAILABLE, ""), -1);
+		Assert.assertNotEquals(driver.getTitle(), "consent");
+	}
+
+	private AccessoriesDialog openPage(String body) throws IOException {
+		page = File.createTempFile("accessories-dialog", ".html");
+		Files.write(page.toPath(),
+				("<html><head><title>store</title></head><body>" + body + "</body></html>")
+						.getBytes(StandardCharsets.UTF_8));
+		driver = new HtmlUnitDriver(BrowserVersion.CHROME, true);
+		driver.get(page.toURI().toString());
+		return new AccessoriesDialog(driver);
+	}
+}